@@ -0,0 +1,186 @@
+/*
+   Batch analysis of positions, for going back over logged games. Positions are streamed from a file or standard
+   input and searched in parallel on a work-stealing pool, each worker thread with its own Search and table. Only a
+   few positions per thread are read ahead of the searches, so memory stays the same however long the input is.
+   Every position produces one JSON line with its index in the input, the best move, score, depth, nodes, time and
+   principal variation. Lines come out in the order searches finish, the index gives the input order.
+
+   Positions use the same text as MiniChess: the move number and side on move on one line followed by the six rows,
+   or all of it on one line with the rows separated by '/' as in the output. Blank lines and lines starting with #
+   are skipped.
+
+   Usage: java Analyse [options] [input file]
+     --depth n      search every position to this depth (default 8)
+     --time ms      search every position for about this long instead of to a fixed depth
+     --threads n    positions searched at the same time (default: available processors)
+     --hash MB      transposition table per thread (default 16)
+     --output file  write the results to a file instead of standard output
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+
+public class Analyse {
+    private static final int queuedPerThread = 4;  // positions read ahead of the searches
+    private static final Pattern rowPattern = Pattern.compile("[.KQRBNPkqrbnp]{" + Position.cols + "}");
+
+    private int depth = 8;
+    private long moveTime;  // per position in nanoseconds, 0 searches to depth instead
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int hashMB = 16;
+    private String inputFile;  // standard input when not given
+    private String outputFile;  // standard output when not given
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Analyse analyse = new Analyse();
+        if(!analyse.parseArguments(args)) {
+            System.out.println("usage: java Analyse [--depth n | --time ms] [--threads n] [--hash MB] [--output file]"
+                    + " [input file]");
+            return;
+        }
+        analyse.run();
+    }
+
+    private boolean parseArguments(String[] args){
+        try {
+            for(int i = 0; i < args.length; ++i){
+                switch (args[i]){
+                    case "--depth": depth = Integer.parseInt(args[++i]); break;
+                    case "--time": moveTime = Long.parseLong(args[++i]) * 1000000L; break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--hash": hashMB = Integer.parseInt(args[++i]); break;
+                    case "--output": outputFile = args[++i]; break;
+                    default:
+                        if(inputFile != null || args[i].startsWith("--"))
+                            return false;
+                        inputFile = args[i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e){
+            return false;
+        }
+        return depth > 0 && depth < Search.maxPly && moveTime >= 0 && threads > 0 && hashMB > 0;
+    }
+
+    /*
+       Reads positions and hands each to the pool as soon as a queue slot is free. Malformed positions are
+       reported in the output and skipped.
+     */
+    private void run() throws IOException, InterruptedException {
+        long startTime = System.nanoTime();
+        BufferedReader input = (inputFile == null ? new BufferedReader(new InputStreamReader(System.in))
+                : Files.newBufferedReader(Paths.get(inputFile)));
+        PrintWriter output = new PrintWriter(new BufferedWriter(outputFile == null ? new OutputStreamWriter(System.out)
+                : Files.newBufferedWriter(Paths.get(outputFile))));
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        ThreadLocal<Search> searches = ThreadLocal.withInitial(this::newSearch);
+        Semaphore queued = new Semaphore(threads * queuedPerThread);
+        long count = 0;
+        long errors = 0;
+        try {
+            String line;
+            while((line = input.readLine()) != null){
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#"))
+                    continue;
+                long index = count++;
+                String text;
+                try {
+                    text = readPosition(line, input);
+                } catch (IllegalArgumentException e){
+                    output.println(errorLine(index, e.getMessage()));
+                    ++errors;
+                    continue;
+                }
+                queued.acquire();
+                pool.execute(() -> {
+                    try {
+                        String result = analyse(searches.get(), index, text);
+                        output.println(result);
+                    } catch (RuntimeException e){
+                        output.println(errorLine(index, e.toString()));
+                    } finally {
+                        queued.release();
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            input.close();
+            output.close();
+        }
+        System.err.println("analysed positions=" + count + " errors=" + errors + " threads=" + threads + " time_ms="
+                + (System.nanoTime() - startTime) / 1000000);
+    }
+
+    private Search newSearch(){
+        Search search = new Search(new Position(MiniChess.defaultBoard), new TranspositionTable(hashMB));
+        search.setRandomizeRoot(false);  // the same position always gets the same analysis
+        return search;
+    }
+
+    /*
+       Returns the text of the position that starts with the given line, reading its rows from the input when the
+       line holds only the move number and side on move.
+     */
+    static String readPosition(String header, BufferedReader input) throws IOException {
+        String[] fields = header.split("\\s+");
+        if(fields.length < 2 || fields.length > 3 || !fields[0].matches("\\d+")
+                || !(fields[1].equals("W") || fields[1].equals("B")))
+            throw new IllegalArgumentException("expected move number and side on move: " + header);
+        String[] rows = new String[Position.rows];
+        if(fields.length == 3)
+            rows = fields[2].split("/");
+        else {
+            for(int i = 0; i < rows.length; ++i){
+                String row = input.readLine();
+                rows[i] = (row == null ? "" : row.trim());
+            }
+        }
+        if(rows.length != Position.rows)
+            throw new IllegalArgumentException("expected " + Position.rows + " rows: " + header);
+        StringBuilder text = new StringBuilder();
+        text.append(fields[0]).append(' ').append(fields[1]).append('\n');
+        for(String row : rows){
+            if(!rowPattern.matcher(row).matches())
+                throw new IllegalArgumentException("bad row: " + row);
+            text.append(row).append('\n');
+        }
+        return text.toString();
+    }
+
+    /*
+       Searches one position and returns its JSON line.
+     */
+    private String analyse(Search search, long index, String text){
+        search.position().copyFrom(new Position(text));
+        long startTime = System.nanoTime();
+        int completedDepth;
+        if(moveTime > 0)
+            completedDepth = search.searchForTime(moveTime);
+        else {
+            search.searchToDepth(depth);
+            completedDepth = search.stats().depth;
+        }
+        long elapsed = System.nanoTime() - startTime;
+        SearchStats stats = search.stats();
+        int best = search.bestMove();
+        StringBuilder json = new StringBuilder();
+        json.append("{\"index\":").append(index)
+                .append(",\"position\":\"").append(text.trim().replaceFirst("\n", " ").replace('\n', '/')).append('"')
+                .append(",\"best\":").append(best == Position.noMove ? "null" : '"' + Position.encodeMove(best) + '"')
+                .append(",\"score\":").append(search.rootScore())
+                .append(",\"depth\":").append(completedDepth)
+                .append(",\"nodes\":").append(stats.nodes)
+                .append(",\"time_ms\":").append(elapsed / 1000000)
+                .append(",\"pv\":\"").append(search.principalVariation(completedDepth)).append("\"}");
+        return json.toString();
+    }
+
+    private static String errorLine(long index, String message){
+        return "{\"index\":" + index + ",\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+}
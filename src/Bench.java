@@ -0,0 +1,145 @@
+/*
+   Command line benchmarks for the engine. "perft" prints the move tree size per depth with nodes per second, which
+   is how changes to move generation or the board are checked against reference counts. From the starting position
+   the counts are compared with the known ones and a mismatch exits with status 1. Without arguments every warm-up
+   position is run through timed loops of move generation, make/unmake, a full evaluation and a fixed-depth search.
+
+   Usage: java Bench perft <depth> [position file]
+          java Bench [search depth]
+ */
+
+import java.io.*;
+import java.nio.file.*;
+
+public class Bench {
+    private static final String[] positions = Warmup.positions;
+    private static final int warmupRounds = 5;
+    private static final int measuredRounds = 5;
+    private static final int loopIterations = 200000;
+    private static final int defaultSearchDepth = 8;
+    private static final long[] startPerft = {1, 7, 49, 473, 4627, 54254, 645381};  // by depth, from the start
+
+    public static void main(String[] args) throws IOException {
+        if(args.length >= 2 && args[0].equals("perft")) {
+            String position = (args.length >= 3 ? new String(Files.readAllBytes(Paths.get(args[2]))) : MiniChess.defaultBoard);
+            if(!perft(position, Integer.parseInt(args[1]), args.length < 3))
+                System.exit(1);
+        }
+        else
+            benchmark(args.length >= 1 ? Integer.parseInt(args[0]) : defaultSearchDepth);
+    }
+
+    /*
+       Prints the perft counts up to the given depth and returns false if one of them differs from the known count
+       for the starting position, when the position is the starting one.
+     */
+    private static boolean perft(String position, int maxDepth, boolean fromStart){
+        Position root = new Position(position);
+        boolean matched = true;
+        for(int depth = 1; depth <= maxDepth; ++depth){
+            long startTime = System.nanoTime();
+            long count = root.perft(depth);
+            long elapsed = Math.max(1, System.nanoTime() - startTime);
+            System.out.printf("perft %d: %d nodes in %.3f s (%d nps)%n", depth, count, elapsed / 1e9,
+                    count * 1000000000L / elapsed);
+            if(fromStart && depth < startPerft.length && count != startPerft[depth]) {
+                System.out.println("perft " + depth + " mismatch, expected " + startPerft[depth]);
+                matched = false;
+            }
+        }
+        return matched;
+    }
+
+    private static void benchmark(int searchDepth){
+        long totalNodes = 0;
+        long totalTime = 0;
+        for(int p = 0; p < positions.length; ++p){
+            Position position = new Position(positions[p]);
+            System.out.println("position " + p);
+            time("generateMoves", loopIterations, () -> benchGenerateMoves(position, loopIterations));
+            time("makeMove/unmakeMove", loopIterations, () -> benchMakeUnmake(position, loopIterations));
+            time("evaluateFromScratch", loopIterations, () -> benchEvaluate(position, loopIterations));
+
+            for(int round = 0; round < warmupRounds; ++round)
+                searcher(positions[p]).searchToDepth(searchDepth - 2);
+            Search search = searcher(positions[p]);
+            long startTime = System.nanoTime();
+            long nodes = search.searchToDepth(searchDepth);
+            long elapsed = Math.max(1, System.nanoTime() - startTime);
+            System.out.printf("  negamaxSearch depth %d: %d nodes in %.3f s (%d nps), best %s%n", searchDepth, nodes,
+                    elapsed / 1e9, nodes * 1000000000L / elapsed, Position.encodeMove(search.bestMove()));
+            totalNodes += nodes;
+            totalTime += elapsed;
+        }
+        System.out.printf("total: %d nodes in %.3f s (%d nps)%n", totalNodes, totalTime / 1e9,
+                totalNodes * 1000000000L / Math.max(1, totalTime));
+    }
+
+    private static Search searcher(String position){
+        Search search = new Search(new Position(position), new TranspositionTable(16));
+        search.setRandomizeRoot(false);  // keep searches repeatable between runs
+        return search;
+    }
+
+    // the following run one hot-path operation in a loop and return a checksum of its results, which is printed so
+    // the JIT cannot drop the work
+
+    private static long benchGenerateMoves(Position position, int iterations){
+        int[] moves = new int[Position.maxMoves];
+        long checksum = 0;
+        for(int i = 0; i < iterations; ++i)
+            checksum += position.generateMoves(moves, false);
+        return checksum;
+    }
+
+    private static long benchMakeUnmake(Position position, int iterations){
+        int[] moves = new int[Position.maxMoves];
+        int moveCount = position.generateMoves(moves, false);
+        long checksum = 0;
+        for(int i = 0; i < iterations; ++i){
+            int move = position.makeMove(moves[i % moveCount]);
+            checksum += position.hashKey();
+            position.unmakeMove(move);
+        }
+        return checksum;
+    }
+
+    /*
+       The evaluation is kept up to date by makeMove, so evaluate itself only reads a field. This times the full
+       board scan instead, over the positions after each legal move so the work differs from one call to the next.
+     */
+    private static long benchEvaluate(Position position, int iterations){
+        int[] moves = new int[Position.maxMoves];
+        int moveCount = position.generateMoves(moves, false);
+        Position[] successors = new Position[moveCount];
+        for(int i = 0; i < moveCount; ++i){
+            successors[i] = new Position(position);
+            successors[i].makeMove(moves[i]);
+        }
+        long checksum = 0;
+        for(int i = 0; i < iterations; ++i)
+            checksum += successors[i % moveCount].evaluateFromScratch();
+        return checksum;
+    }
+
+    private interface Loop {
+        long run();
+    }
+
+    /*
+       Runs the loop a few times to let the JIT compile it before taking the best of the measured rounds, and reports
+       the time per operation of that round.
+     */
+    private static void time(String name, int operations, Loop loop){
+        long checksum = 0;
+        for(int round = 0; round < warmupRounds; ++round)
+            checksum += loop.run();
+        long best = Long.MAX_VALUE;
+        for(int round = 0; round < measuredRounds; ++round){
+            long startTime = System.nanoTime();
+            checksum += loop.run();
+            best = Math.min(best, System.nanoTime() - startTime);
+        }
+        System.out.printf("  %s: %.1f ns/op (checksum %d)%n", name, (double) best / operations, checksum);
+    }
+}
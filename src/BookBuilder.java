@@ -0,0 +1,120 @@
+/*
+   Offline builder for the opening book read by OpeningBook. Every position reachable from the starting position in
+   the given number of plies is collected, then each one is analysed by searching every legal move to a fixed depth
+   in parallel. Moves scoring within a margin of the best one go into the book, weighted by how close they are.
+
+   Usage: java BookBuilder <output file> [plies] [search depth] [threads]
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class BookBuilder {
+    private static final int defaultPlies = 4;
+    private static final int defaultDepth = 7;
+    private static final int scoreMargin = 30;  // moves this much worse than the best still get a small weight
+    private static final int searchTableMB = 16;
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if(args.length < 1) {
+            System.out.println("usage: java BookBuilder <output file> [plies] [search depth] [threads]");
+            return;
+        }
+        int plies = (args.length > 1 ? Integer.parseInt(args[1]) : defaultPlies);
+        int depth = (args.length > 2 ? Integer.parseInt(args[2]) : defaultDepth);
+        int threads = (args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors());
+
+        List<String> positions = collectPositions(plies);
+        System.out.println("book positions=" + positions.size() + " depth=" + depth + " threads=" + threads);
+        List<long[]> records = analyse(positions, depth, threads);
+        write(Paths.get(args[0]), records);
+        System.out.println("book records=" + records.size() + " file=" + args[0]);
+    }
+
+    /*
+       Walks the move tree breadth first from the starting position and returns every distinct position found
+       before the last ply, so the book covers moves up to the given depth.
+     */
+    private static List<String> collectPositions(int plies){
+        HashSet<Long> seen = new HashSet<>();
+        List<String> positions = new ArrayList<>();
+        List<String> frontier = new ArrayList<>();
+        frontier.add(MiniChess.defaultBoard);
+        for(int ply = 0; ply < plies; ++ply){
+            List<String> next = new ArrayList<>();
+            for(String position : frontier){
+                Position walker = new Position(position);
+                if(!seen.add(walker.hashKey()))
+                    continue;
+                positions.add(position);
+                for(int move : walker.legalMoves())
+                    next.add(walker.textAfter(move));
+            }
+            frontier = next;
+        }
+        return positions;
+    }
+
+    /*
+       Searches every move of every position on a pool of threads, each with its own Search and table, and returns
+       the book records as {key, move, weight} triples. A position whose search fails fails the whole build rather
+       than leaving a book with holes in it.
+     */
+    private static List<long[]> analyse(List<String> positions, int depth, int threads)
+            throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<Search> searches = ThreadLocal.withInitial(() -> {
+            Search search = new Search(new Position(MiniChess.defaultBoard), new TranspositionTable(searchTableMB));
+            search.setRandomizeRoot(false);
+            return search;
+        });
+        List<long[]> records = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> results = new ArrayList<>();
+        for(String text : positions){
+            results.add(pool.submit(() -> {
+                Search search = searches.get();
+                Position position = search.position();
+                position.copyFrom(new Position(text));
+                long key = position.hashKey();
+                int[] moves = position.legalMoves();
+                int[] scores = new int[moves.length];
+                int best = Integer.MIN_VALUE;
+                for(int i = 0; i < moves.length; ++i){
+                    int move = position.makeMove(moves[i]);
+                    search.searchToDepth(Math.max(1, depth - 1));
+                    scores[i] = -search.rootScore();
+                    best = Math.max(best, scores[i]);
+                    position.unmakeMove(move);
+                }
+                for(int i = 0; i < moves.length; ++i){
+                    if(best - scores[i] <= scoreMargin)
+                        records.add(new long[]{key, moves[i] & Position.squaresMask, 1 + scoreMargin - (best - scores[i])});
+                }
+            }));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        for(Future<?> result : results)
+            result.get();
+        return records;
+    }
+
+    private static void write(Path file, List<long[]> records) throws IOException {
+        records.sort((a, b) -> Long.compare(a[0], b[0]));
+        ByteBuffer buffer = ByteBuffer.allocate(OpeningBook.headerBytes + records.size() * OpeningBook.recordBytes);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(OpeningBook.magic).putInt(OpeningBook.version).putInt(records.size());
+        for(long[] record : records)
+            buffer.putLong(record[0]).putShort((short) record[1]).putShort((short) record[2]);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+}
@@ -4,6 +4,9 @@
 
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Provides an interface to the Internet MiniChess Server.
@@ -19,15 +22,100 @@ import java.net.*;
  * A lower-level "expect/send" interface is also provided
  * for those who want to extend the functionality of this
  * class.
+ * <p>
+ * The connection is a non-blocking socket channel, so every
+ * read is bounded by a timeout and a stalled server raises
+ * a SocketTimeoutException instead of hanging the game.
+ * The remaining clock times from the move prompts are kept
+ * for the engine's time manager.
  */
 public class Client {
-    BufferedReader in;
-    PrintStream out;
+    SocketChannel channel;
+    Selector selector;
+    ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+    StringBuilder pending = new StringBuilder();  // bytes read but not yet returned as lines
+    boolean endOfStream = false;
     String sendLineEnding = "\r\n";
 
+    String server;
+    String portStr;
+    String username;
+    String password;
+
+    long readTimeout = 30000;  // milliseconds to wait for a server response
+    long moveGrace = 30000;  // extra milliseconds to wait for an opponent move beyond its clock
+    int connectAttempts = 3;
+
+    long myTimeLeft = -1;  // milliseconds left on our clock at the last prompt, -1 if unknown
+    long opponentTimeLeft = -1;
+
+    /**
+     * Read one line from the server, waiting at most the
+     * given time for it to arrive.
+     *
+     * @param timeout milliseconds to wait
+     * @return line without its line ending, or null at end of stream
+     */
+    String readLine(long timeout)
+            throws IOException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            int newline = pending.indexOf("\n");
+            if (newline >= 0) {
+                String line = pending.substring(0, newline);
+                pending.delete(0, newline + 1);
+                if (line.endsWith("\r"))
+                    line = line.substring(0, line.length() - 1);
+                return line;
+            }
+            if (endOfStream) {
+                if (pending.length() == 0)
+                    return null;
+                String line = pending.toString();
+                pending.setLength(0);
+                return line;
+            }
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0)
+                throw new SocketTimeoutException("read timed out after " + timeout + " ms");
+            selector.select(wait);
+            selector.selectedKeys().clear();
+            int count = channel.read(readBuffer);
+            if (count < 0)
+                endOfStream = true;
+            readBuffer.flip();
+            while (readBuffer.hasRemaining())
+                pending.append((char) (readBuffer.get() & 0xFF));
+            readBuffer.clear();
+        }
+    }
+
+    /**
+     * Write a whole string to the server.
+     *
+     * @param text text to send
+     */
+    void write(String text)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+        long deadline = System.currentTimeMillis() + readTimeout;
+        while (buffer.hasRemaining()) {
+            if (channel.write(buffer) > 0)
+                continue;
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0)
+                throw new SocketTimeoutException("write timed out after " + readTimeout + " ms");
+            SelectionKey key = channel.keyFor(selector);
+            key.interestOps(SelectionKey.OP_WRITE);  // wait for room in the socket send buffer
+            selector.select(wait);
+            selector.selectedKeys().clear();
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
     /**
      * Get a response from the server. Blocks until response
-     * is received.
+     * is received or the read timeout passes.
      *
      * @param verbose if true, print the command sent on stdout
      * @return response
@@ -36,7 +124,7 @@ public class Client {
             throws IOException {
         String response;
         while (true) {
-            response = in.readLine();
+            response = readLine(readTimeout);
             if (response == null)
                 throw new IOException("expectResponse: EOF");
             if (verbose)
@@ -95,11 +183,11 @@ public class Client {
      * @param cmd     command to send
      * @param verbose if true, print the command sent on stdout
      */
-    public void send(String cmd, boolean verbose) {
+    public void send(String cmd, boolean verbose)
+            throws IOException {
         if (verbose)
             System.out.println(cmd);
-        out.print(cmd + sendLineEnding);
-        out.flush();
+        write(cmd + sendLineEnding);
     }
 
     /**
@@ -134,12 +222,46 @@ public class Client {
 
     void setClient(String server, String portStr,
                    String username, String password) throws IOException {
+        this.server = server;
+        this.portStr = portStr;
+        this.username = username;
+        this.password = password;
+        IOException failure = null;
+        for (int attempt = 0; attempt < connectAttempts; attempt++) {
+            try {
+                connect();
+                return;
+            } catch (IOException e) {
+                failure = e;
+                closeChannel();
+                if (attempt + 1 == connectAttempts)
+                    break;
+                try {
+                    Thread.sleep(1000L << attempt);  // back off before retrying
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        throw failure;
+    }
+
+    void connect() throws IOException {
         int port = Integer.parseInt(portStr);
-        Socket s = new Socket(server, port);
-        InputStreamReader isr =
-                new InputStreamReader(s.getInputStream());
-        in = new BufferedReader(isr);
-        out = new PrintStream(s.getOutputStream(), true);
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        pending.setLength(0);
+        endOfStream = false;
+        if (!channel.connect(new InetSocketAddress(server, port))) {
+            channel.register(selector, SelectionKey.OP_CONNECT);
+            if (selector.select(readTimeout) == 0)
+                throw new SocketTimeoutException("connect timed out");
+            selector.selectedKeys().clear();
+            channel.finishConnect();
+        }
+        channel.register(selector, SelectionKey.OP_READ);
         String version = expectResponse(false);
         if (!"imcs 2.5".equals(responseString(version)))
             throw new Error("client: imcs version mismatch");
@@ -147,9 +269,99 @@ public class Client {
         expect("201", true);
     }
 
+    /**
+     * Set how long to wait for a server response before
+     * giving up.
+     *
+     * @param milliseconds read timeout
+     */
+    public void setReadTimeout(long milliseconds) {
+        readTimeout = milliseconds;
+    }
+
+    /**
+     * Get our remaining clock time as reported by the
+     * server at the last move prompt.
+     *
+     * @return milliseconds left, or -1 if not known
+     */
+    public long getMyTimeLeft() {
+        return myTimeLeft;
+    }
+
+    /**
+     * Get the opponent's remaining clock time as reported by
+     * the server at the last move prompt.
+     *
+     * @return milliseconds left, or -1 if not known
+     */
+    public long getOpponentTimeLeft() {
+        return opponentTimeLeft;
+    }
+
+    /**
+     * Parse the clock fields of a move prompt such as
+     * "? W 4:58.120 B 5:00.000" or "? 4:58.120 5:00.000".
+     * Times tagged with a color are assigned by color, untagged
+     * times are taken as ours first since the prompt is sent
+     * to the side on move.
+     *
+     * @param line  prompt line from the server
+     * @param color the color our side plays, or '?' if unknown
+     */
+    void parseClocks(String line, char color) {
+        String[] fields = line.substring(1).trim().split("\\s+");
+        long[] times = new long[2];
+        int found = 0;
+        char tag = '\0';
+        for (String field : fields) {
+            if (field.equals("W") || field.equals("B")) {
+                tag = field.charAt(0);
+                continue;
+            }
+            long time = parseTime(field);
+            if (time < 0)
+                continue;
+            if (tag != '\0' && color != '?') {
+                if (tag == color)
+                    myTimeLeft = time;
+                else
+                    opponentTimeLeft = time;
+            } else if (found < 2) {
+                times[found++] = time;
+            }
+            tag = '\0';
+        }
+        if (found >= 1)
+            myTimeLeft = times[0];
+        if (found >= 2)
+            opponentTimeLeft = times[1];
+    }
+
+    /**
+     * Parse a clock time written as seconds, m:ss or h:mm:ss,
+     * with optional fractional seconds.
+     *
+     * @param field time string
+     * @return milliseconds, or -1 if the field is not a time
+     */
+    static long parseTime(String field) {
+        if (field.isEmpty() || !Character.isDigit(field.charAt(0)))
+            return -1;
+        double seconds = 0;
+        try {
+            for (String part : field.split(":"))
+                seconds = seconds * 60 + Double.parseDouble(part);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        return Math.round(seconds * 1000);
+    }
+
     /**
      * Get a move string from the IMCS server. Blocks
-     * until move is received.
+     * until move is received, for at most the opponent's
+     * remaining clock plus a grace period.
      *
      * @return opponent move string
      */
@@ -157,8 +369,10 @@ public class Client {
             throws IOException {
         String line;
         char ch;
+        long timeout = Math.max(readTimeout,
+                (opponentTimeLeft >= 0 ? opponentTimeLeft : 300000) + moveGrace);
         while (true) {
-            line = in.readLine();
+            line = readLine(timeout);
             if (line == null)
                 return null;
             System.out.println(line);
@@ -174,22 +388,35 @@ public class Client {
     }
 
     /**
-     * Send a move to the server.
+     * Send a move to the server. The clock fields of the
+     * move prompt are recorded on the way.
      *
      * @param moveStr move string to send
      */
     public void sendMove(String moveStr)
             throws IOException {
+        sendMove(moveStr, '?');
+    }
+
+    /**
+     * Send a move to the server. The clock fields of the
+     * move prompt are recorded on the way.
+     *
+     * @param moveStr move string to send
+     * @param color   the color our side plays, used to assign tagged clock fields
+     */
+    public void sendMove(String moveStr, char color)
+            throws IOException {
         String line;
         do {
-            line = in.readLine();
+            line = readLine(readTimeout);
             if (line == null)
                 throw new IOException("server terminated unexpectedly");
             System.out.println(line);
         } while (line.length() == 0 || line.charAt(0) != '?');
+        parseClocks(line, color);
         System.out.println(moveStr);
-        out.print(moveStr + sendLineEnding);
-        out.flush();
+        write(moveStr + sendLineEnding);
     }
 
     /**
@@ -208,7 +435,16 @@ public class Client {
         else
             send("offer " + color, true);
         expect("103", true);
-        String code = responseCode(expectResponse(true));
+        String response;
+        do {  // an offer may stay open much longer than the read timeout
+            try {
+                response = expectResponse(true);
+                break;
+            } catch (SocketTimeoutException e) {
+                response = null;
+            }
+        } while (true);
+        String code = responseCode(response);
         if (code.equals("105"))
             return 'W';
         else if (code.equals("106"))
@@ -239,13 +475,26 @@ public class Client {
         throw new IOException("accept: unknown response code");
     }
 
+    void closeChannel() {
+        try {
+            if (selector != null)
+                selector.close();
+            if (channel != null)
+                channel.close();
+        } catch (IOException e) {
+            // nothing more can be done with a connection that fails to close
+        }
+    }
+
     /**
      * Closes the connection to the server. Do not use the
      * object after this.
      */
     public void close()
             throws IOException {
-        in.close();
-        out.close();
+        if (selector != null)
+            selector.close();
+        if (channel != null)
+            channel.close();
     }
 }
@@ -0,0 +1,136 @@
+/*
+   Plays many IMCS games at once from one JVM. Every game gets its own connection thread and MiniChess instance,
+   the helper search threads of all games come from one shared bounded pool, and the transposition table memory
+   and thread count are split between the games that run at the same time.
+
+   Usage: java EngineHost [options] game...
+     game              accept:<id>[:<color>] or offer[:<color>], color is W, B or ? (default)
+     --server host     IMCS server (default imcs.svcs.cs.pdx.edu)
+     --port n          IMCS port (default 3589)
+     --user name       account name
+     --password secret account password
+     --threads n       search threads shared by all games (default: available processors)
+     --hash mb         transposition table memory shared by all games (default 256)
+     --concurrent n    games played at the same time (default: all of them)
+     --book file       opening book written by BookBuilder, shared by all games
+     --tablebases dir  endgame tables written by TablebaseGenerator, shared by all games
+     --log file        append every game to a game log read by GameReplay
+     --weights file    evaluation weights written by Tuner
+     --warmup ms       time spent warming up the JIT before the first game (default 2000, 0 to skip)
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class EngineHost {
+    private String server = "imcs.svcs.cs.pdx.edu";
+    private String port = "3589";
+    private String username = "slowclap";
+    private String password = "slowclap";
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int hashMB = 256;
+    private int concurrent = 0;
+    private OpeningBook openingBook;
+    private Tablebases tablebases;
+    private GameLog gameLog;
+    private long warmupTime = Warmup.defaultBudget;
+    private final ArrayList<String> games = new ArrayList<>();
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        EngineHost host = new EngineHost();
+        if(!host.parseArguments(args)) {
+            System.out.println("usage: java EngineHost [--server host] [--port n] [--user name] [--password secret]"
+                    + " [--threads n] [--hash mb] [--concurrent n] [--book file] [--tablebases dir] [--log file]"
+                    + " [--weights file] [--warmup ms] accept:<id>[:<color>] | offer[:<color>] ...");
+            return;
+        }
+        host.run();
+    }
+
+    private boolean parseArguments(String[] args) throws IOException {
+        try {
+            for(int i = 0; i < args.length; ++i){
+                switch (args[i]){
+                    case "--server": server = args[++i]; break;
+                    case "--port": port = args[++i]; break;
+                    case "--user": username = args[++i]; break;
+                    case "--password": password = args[++i]; break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--hash": hashMB = Integer.parseInt(args[++i]); break;
+                    case "--concurrent": concurrent = Integer.parseInt(args[++i]); break;
+                    case "--book": openingBook = new OpeningBook(Paths.get(args[++i])); break;
+                    case "--tablebases": tablebases = Tablebases.load(Paths.get(args[++i])); break;
+                    case "--log": gameLog = GameLog.open(Paths.get(args[++i])); break;
+                    case "--weights": Position.setWeights(EvaluationWeights.read(Paths.get(args[++i]))); break;
+                    case "--warmup": warmupTime = Long.parseLong(args[++i]) * 1000000L; break;
+                    default:
+                        if(!args[i].startsWith("accept:") && !args[i].startsWith("offer"))
+                            return false;
+                        games.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e){
+            return false;
+        }
+        return !games.isEmpty();
+    }
+
+    /*
+       Runs every game to completion. Connection threads mostly sit blocked on the server, so there is one per
+       game in flight, while the CPU-bound helper searches share a pool sized to the machine. A game's main search
+       runs on its connection thread and counts as one of its threads, and hosted games do not ponder, so only
+       games whose clock is running use the CPU.
+     */
+    private void run() throws InterruptedException, IOException {
+        int inFlight = (concurrent > 0 ? Math.min(concurrent, games.size()) : games.size());
+        int hashPerGame = Math.max(1, hashMB / inFlight);
+        int threadsPerGame = Math.max(1, threads / inFlight);
+        if(warmupTime > 0)
+            Warmup.run(warmupTime);
+
+        ExecutorService searchPool = Executors.newFixedThreadPool(Math.max(1, threads), daemonThreads());
+        ExecutorService connections = Executors.newFixedThreadPool(inFlight, daemonThreads());
+        System.out.println("host games=" + games.size() + " concurrent=" + inFlight + " hash_mb_per_game="
+                + hashPerGame + " threads_per_game=" + threadsPerGame);
+
+        for(String game : games){
+            connections.execute(() -> {
+                try {
+                    playGame(game, searchPool, hashPerGame, threadsPerGame);
+                    System.out.println("host finished " + game);
+                } catch (RuntimeException | Error e){  // the Client reports a server mismatch as an Error
+                    System.out.println("host failed " + game + ": " + e);
+                }
+            });
+        }
+        connections.shutdown();
+        connections.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        searchPool.shutdown();
+        if(gameLog != null)
+            gameLog.close();
+    }
+
+    private void playGame(String game, ExecutorService searchPool, int hashPerGame, int threadsPerGame){
+        String[] fields = game.split(":");
+        boolean accept = fields[0].equals("accept");
+        String offerID = (accept && fields.length > 1 ? fields[1] : "");
+        String colorField = (accept ? (fields.length > 2 ? fields[2] : "?") : (fields.length > 1 ? fields[1] : "?"));
+        MiniChess mc = new MiniChess(MiniChess.defaultBoard, hashPerGame, threadsPerGame);
+        mc.setSearchPool(searchPool);
+        mc.setPonder(false);  // a ponder thread per game would sit outside the shared pool and the thread budget
+        mc.setOpeningBook(openingBook);
+        mc.setTablebases(tablebases);
+        mc.setGameLog(gameLog);
+        mc.playOnServer(server, port, username, password, accept ? 0 : 1, offerID, colorField.charAt(0));
+    }
+
+    private static ThreadFactory daemonThreads(){
+        return runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
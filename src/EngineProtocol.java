@@ -0,0 +1,328 @@
+/*
+   Keeps one warm engine running and drives it with a UCI-style text protocol over stdin and stdout, so that a
+   tournament manager or an analysis GUI can play many games without paying JVM startup and cold caches each time.
+   Searches run on their own thread while this one keeps reading commands, and "stop" sets the flag the search
+   polls every 1024 nodes, so the best move comes back within a millisecond or two. Moves are written the way the
+   IMCS server writes them, like a2-a3.
+
+   Usage: java EngineProtocol, then one command per line:
+     uci                            identify the engine and list the options
+     isready                        answered with readyok
+     ucinewgame                     clear the table and history before a new game
+     position startpos [moves m...] the start position, then the given moves
+     position text <n> <W|B> <rows> [moves m...]
+                                    a position as move number, side on move and the rows separated by '/'
+     go [depth n] [nodes n] [movetime ms] [wtime ms] [btime ms] [infinite] [ponder]
+                                    search, answered with bestmove <move> [ponder <move>]
+     stop                           end the search now
+     ponderhit                      the expected move was played, the ponder search goes on the clock
+     setoption name <name> value <value>
+                                    Hash (mb), Threads, NullMove, LateMoveReductions, FutilityPruning,
+                                    StaticExchange (true or false), Tablebases (directory), Weights (file)
+     quit
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class EngineProtocol {
+    private static final int defaultHashMB = 64;
+    private static final long moveOverhead = 20000000L;  // taken off movetime for reading and writing the move
+    private static final long nanosPerMilli = 1000000L;
+
+    private int hashMB = defaultHashMB;
+    private int threads = 1;
+    private boolean useNullMove = true;
+    private boolean useLateMoveReductions = true;
+    private boolean useFutilityPruning = true;
+    private boolean useStaticExchange = true;
+    private Tablebases tablebases;
+    private MiniChess engine;
+    private String startPosition = MiniChess.defaultBoard;
+    private final List<String> moves = new ArrayList<>();  // played from startPosition, kept for repetitions
+
+    private Thread searchThread;
+    private boolean holdBestMove;  // infinite or ponder search, bestmove waits for stop or ponderhit; guarded by this
+    private boolean infinite;
+    private long ponderBudget;  // thinking time the ponder search gets once ponderhit arrives, 0 for none
+    private long searchStart;
+
+    public static void main(String[] args) throws IOException {
+        new EngineProtocol().run(new BufferedReader(new InputStreamReader(System.in)));
+    }
+
+    void run(BufferedReader input) throws IOException {
+        newEngine();
+        String line;
+        while((line = input.readLine()) != null){
+            String[] tokens = line.trim().split("\\s+");
+            try {
+                switch (tokens[0]){
+                    case "": break;
+                    case "uci": identify(); break;
+                    case "isready": send("readyok"); break;
+                    case "ucinewgame": waitForSearch(); engine.startGame(0, Long.MAX_VALUE); break;
+                    case "position": waitForSearch(); position(tokens); break;
+                    case "go": waitForSearch(); go(tokens); break;
+                    case "stop": stop(); break;
+                    case "ponderhit": ponderhit(); break;
+                    case "setoption": waitForSearch(); setOption(tokens); break;
+                    case "quit": waitForSearch(); return;
+                    default: send("info string unknown command " + tokens[0]);
+                }
+            } catch (RuntimeException | IOException e){  // bad input must not end a long-lived engine
+                send("info string " + e);
+            }
+        }
+        waitForSearch();
+    }
+
+    private void identify(){
+        send("id name MiniChess");
+        send("id author Daniel Eynis");
+        send("option name Hash type spin default " + defaultHashMB + " min 1 max 4096");
+        send("option name Threads type spin default 1 min 1 max 64");
+        send("option name Ponder type check default false");
+        send("option name NullMove type check default true");
+        send("option name LateMoveReductions type check default true");
+        send("option name FutilityPruning type check default true");
+        send("option name StaticExchange type check default true");
+        send("option name Tablebases type string default <empty>");
+        send("option name Weights type string default <empty>");
+        send("uciok");
+    }
+
+    /*
+       A new engine with the current table size, threads and options, set up on the current position. Only called
+       while no search runs.
+     */
+    private void newEngine(){
+        engine = new MiniChess(MiniChess.defaultBoard, hashMB, threads);
+        engine.setLogSearches(false);
+        engine.setPonder(false);  // the GUI says when to ponder
+        engine.setUseNullMove(useNullMove);
+        engine.setUseLateMoveReductions(useLateMoveReductions);
+        engine.setUseFutilityPruning(useFutilityPruning);
+        engine.setUseStaticExchange(useStaticExchange);
+        engine.setTablebases(tablebases);
+        engine.startGame(0, Long.MAX_VALUE);  // the clock comes from every go command
+        setUpPosition();
+    }
+
+    private void position(String[] tokens){
+        int movesIndex = Arrays.asList(tokens).indexOf("moves");
+        int end = (movesIndex < 0 ? tokens.length : movesIndex);
+        String start;
+        if(tokens.length > 1 && tokens[1].equals("startpos") && end == 2)
+            start = MiniChess.defaultBoard;
+        else if(tokens.length > 1 && tokens[1].equals("text")) {
+            if(end - 2 != 3)  // there is no next line to read the rows from
+                throw new IllegalArgumentException("expected position text <n> <W|B> <rows>");
+            try {
+                start = Analyse.readPosition(String.join(" ", Arrays.copyOfRange(tokens, 2, end)), null);
+            } catch (IOException e){
+                throw new UncheckedIOException(e);  // never read, the rows are on the line
+            }
+        }
+        else
+            throw new IllegalArgumentException("expected position startpos or position text");
+        startPosition = start;
+        moves.clear();
+        if(movesIndex >= 0)
+            moves.addAll(Arrays.asList(tokens).subList(movesIndex + 1, tokens.length));
+        setUpPosition();
+    }
+
+    /*
+       Sets the engine to startPosition and plays the moves on it, so the position history sees repetitions.
+       Stops at the first move that is not legal and drops it and the moves after it.
+     */
+    private void setUpPosition(){
+        engine.setPosition(startPosition);
+        for(int i = 0; i < moves.size(); ++i){
+            String text = moves.get(i);
+            int move = Position.noMove;
+            if(text.matches("[a-e][1-6]-[a-e][1-6]")) {
+                int decoded = Position.decodeMove(text);
+                for(int legal : engine.legalMoves()){
+                    if(Position.sameSquares(legal, decoded))
+                        move = legal;
+                }
+            }
+            if(move == Position.noMove) {
+                send("info string illegal move " + text);
+                moves.subList(i, moves.size()).clear();
+                return;
+            }
+            engine.playGameMove(move);
+        }
+    }
+
+    private void go(String[] tokens){
+        int maxDepth = Search.maxPly;
+        long nodeLimit = Long.MAX_VALUE;
+        long moveTime = -1;
+        long whiteTime = -1;
+        long blackTime = -1;
+        boolean ponder = false;
+        infinite = false;
+        for(int i = 1; i < tokens.length; ++i){
+            switch (tokens[i]){
+                case "depth": maxDepth = Integer.parseInt(argument(tokens, ++i)); break;
+                case "nodes": nodeLimit = Long.parseLong(argument(tokens, ++i)); break;
+                case "movetime": moveTime = Long.parseLong(argument(tokens, ++i)); break;
+                case "wtime": whiteTime = Long.parseLong(argument(tokens, ++i)); break;
+                case "btime": blackTime = Long.parseLong(argument(tokens, ++i)); break;
+                case "infinite": infinite = true; break;
+                case "ponder": ponder = true; break;
+                default: break;  // winc, binc, movestogo and the like are not used
+            }
+        }
+        long clock = (engine.getSideToMove() == 'W' ? whiteTime : blackTime);
+        long budget = 0;
+        if(moveTime >= 0)
+            budget = Math.max(nanosPerMilli, moveTime * nanosPerMilli - moveOverhead);
+        else if(clock >= 0)
+            budget = engine.clockBudget(clock * nanosPerMilli);
+
+        searchStart = System.nanoTime();
+        ponderBudget = (ponder ? budget : 0);
+        long deadline = (budget > 0 && !ponder && !infinite ? searchStart + budget : Long.MAX_VALUE);
+        synchronized (this) {
+            holdBestMove = infinite || ponder;
+        }
+        engine.resetStop();  // before the thread starts, so a stop sent right away is not lost
+        int depth = Math.max(1, maxDepth);
+        long nodes = Math.max(1, nodeLimit);
+        searchThread = new Thread(() -> search(deadline, depth, nodes), "search");
+        searchThread.start();
+    }
+
+    private static String argument(String[] tokens, int i){
+        if(i >= tokens.length)
+            throw new IllegalArgumentException("missing value after " + tokens[i - 1]);
+        return tokens[i];
+    }
+
+    /*
+       Runs on the search thread. The best move is held back while an infinite or ponder search waits for stop or
+       ponderhit, even when the search itself is done.
+     */
+    private void search(long deadline, int maxDepth, long nodeLimit){
+        int move = engine.searchWithLimits(deadline, maxDepth, nodeLimit, this::reportIteration);
+        synchronized (this) {
+            while(holdBestMove){
+                try {
+                    wait();
+                } catch (InterruptedException e){
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        if(move == Position.noMove) {
+            send("bestmove 0000");
+            return;
+        }
+        String bestMove = Position.encodeMove(move);
+        String[] pv = engine.getStats().principalVariation.trim().split("\\s+");
+        send("bestmove " + bestMove + (pv.length > 1 && pv[0].equals(bestMove) ? " ponder " + pv[1] : ""));
+    }
+
+    private void reportIteration(Search search, int depth){
+        long elapsed = (System.nanoTime() - searchStart) / nanosPerMilli;
+        long nodes = search.stats().nodes;
+        send("info depth " + depth + " score cp " + search.rootScore() + " nodes " + nodes + " nps "
+                + nodes * 1000 / Math.max(1, elapsed) + " time " + elapsed + " pv "
+                + search.principalVariation(depth).trim());
+    }
+
+    private void stop(){
+        synchronized (this) {
+            holdBestMove = false;
+            notifyAll();
+        }
+        engine.stopSearch();
+    }
+
+    /*
+       The opponent played the move we pondered on: the running search gets the thinking time the go command
+       asked for, counted from now, and its best move is no longer held back unless the search is infinite.
+     */
+    private void ponderhit(){
+        if(ponderBudget > 0)
+            engine.setSearchDeadline(System.nanoTime() + ponderBudget);
+        synchronized (this) {
+            if(!infinite) {
+                holdBestMove = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /*
+       Stops the running search, if any, and waits until its bestmove is out.
+     */
+    private void waitForSearch(){
+        if(searchThread == null)
+            return;
+        stop();
+        boolean interrupted = false;
+        while(searchThread.isAlive()){
+            try {
+                searchThread.join();
+            } catch (InterruptedException e){
+                interrupted = true;
+            }
+        }
+        searchThread = null;
+        if(interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void setOption(String[] tokens) throws IOException {
+        List<String> words = Arrays.asList(tokens);
+        int nameIndex = words.indexOf("name");
+        int valueIndex = words.indexOf("value");
+        if(nameIndex < 0 || valueIndex < nameIndex + 2)
+            throw new IllegalArgumentException("expected setoption name <name> value <value>");
+        String name = String.join(" ", words.subList(nameIndex + 1, valueIndex));
+        String value = String.join(" ", words.subList(valueIndex + 1, words.size()));
+        switch (name){
+            case "Hash": hashMB = Math.max(1, Integer.parseInt(value)); newEngine(); break;
+            case "Threads": threads = Math.max(1, Integer.parseInt(value)); newEngine(); break;
+            case "Ponder": break;  // only tells us the GUI may send go ponder
+            case "NullMove": useNullMove = Boolean.parseBoolean(value); engine.setUseNullMove(useNullMove); break;
+            case "LateMoveReductions":
+                useLateMoveReductions = Boolean.parseBoolean(value);
+                engine.setUseLateMoveReductions(useLateMoveReductions);
+                break;
+            case "FutilityPruning":
+                useFutilityPruning = Boolean.parseBoolean(value);
+                engine.setUseFutilityPruning(useFutilityPruning);
+                break;
+            case "StaticExchange":
+                useStaticExchange = Boolean.parseBoolean(value);
+                engine.setUseStaticExchange(useStaticExchange);
+                break;
+            case "Tablebases":
+                tablebases = (value.isEmpty() || value.equals("<empty>") ? null : Tablebases.load(Paths.get(value)));
+                engine.setTablebases(tablebases);
+                break;
+            case "Weights":
+                Position.setWeights(EvaluationWeights.read(Paths.get(value)));
+                setUpPosition();  // the incremental evaluation of the current position was built with the old weights
+                break;
+            default: throw new IllegalArgumentException("unknown option " + name);
+        }
+    }
+
+    /*
+       Writes one line. Called from both the reading thread and the search thread, hence the lock.
+     */
+    private synchronized void send(String line){
+        System.out.println(line);
+        System.out.flush();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+   Piece values and piece-square tables of the evaluation, as written by Tuner and loaded by Position.setWeights.
+   The file is text: for every piece type its letter and value, then its table from white's side as six rows of
+   five numbers with the row white pawns promote on first. Lines starting with # are comments.
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class EvaluationWeights {
+    static final String pieceTypes = "pnbrqk";  // the order of pieceValues and tables
+
+    final int[] pieceValues = new int[pieceTypes.length()];
+    final int[][] tables = new int[pieceTypes.length()][Position.squares];
+
+    static EvaluationWeights read(Path file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for(String line : Files.readAllLines(file)){
+            if(!line.trim().startsWith("#"))
+                text.append(line).append('\n');
+        }
+        EvaluationWeights weights = new EvaluationWeights();
+        boolean[] seen = new boolean[pieceTypes.length()];
+        Scanner input = new Scanner(text.toString());
+        try {
+            while(input.hasNext()){
+                String letter = input.next();
+                int type = pieceTypes.indexOf(letter);
+                if(letter.length() != 1 || type < 0 || seen[type])
+                    throw new IOException("bad piece " + letter + " in weights file " + file);
+                seen[type] = true;
+                weights.pieceValues[type] = input.nextInt();
+                for(int sq = 0; sq < Position.squares; ++sq)
+                    weights.tables[type][sq] = input.nextInt();
+            }
+        } catch (NoSuchElementException e){
+            throw new IOException("truncated weights file " + file);
+        }
+        for(int type = 0; type < seen.length; ++type){
+            if(!seen[type])
+                throw new IOException("no weights for " + pieceTypes.charAt(type) + " in " + file);
+        }
+        return weights;
+    }
+
+    void write(Path file, String comment) throws IOException {
+        StringBuilder text = new StringBuilder();
+        text.append("# ").append(comment).append('\n');
+        for(int type = 0; type < pieceTypes.length(); ++type){
+            text.append(pieceTypes.charAt(type)).append(' ').append(pieceValues[type]).append('\n');
+            for(int row = 0; row < Position.rows; ++row){
+                for(int col = 0; col < Position.cols; ++col)
+                    text.append(String.format("%5d", tables[type][row * Position.cols + col]));
+                text.append('\n');
+            }
+        }
+        Files.write(file, text.toString().getBytes());
+    }
+}
@@ -0,0 +1,258 @@
+/*
+   Append-only binary record of played games, with an index file so any game can be found without reading the
+   ones before it. The log starts with a small header followed by one record per game:
+
+     int   moves          short start move number     then per move:
+     long  start time ms  byte  start side to move        short from and to squares
+     byte  result         30    start board letters       int   score for the side that moved, 0 if not searched
+     byte  engine color                                   byte  depth, 0 if not searched
+                                                          int   search time ms
+
+   The index file (the log name plus .idx) has its own header and then the offset of every game in the log as a
+   long, so game n is one positional read away. Moves of a game collect in memory and the whole record is written
+   with one buffered write when the game ends, so nothing touches the disk while the engine is on move.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.Arrays;
+
+public class GameLog implements Closeable {
+    static final int magic = 0x4D43474C;  // "MCGL"
+    static final int indexMagic = 0x4D434749;  // "MCGI"
+    static final int version = 1;
+    static final int fileHeaderBytes = 8;  // magic, version, in both files
+    static final int gameHeaderBytes = 4 + 8 + 1 + 1 + 2 + 1 + Position.squares;
+    static final int moveBytes = 2 + 4 + 1 + 4;
+    static final int indexEntryBytes = 8;
+
+    // results, from white's side
+    static final byte whiteWins = 1;
+    static final byte draw = 0;
+    static final byte blackWins = -1;
+    static final byte unfinished = 2;  // the connection ended before the game did
+
+    private final FileChannel data;
+    private final FileChannel index;
+
+    /*
+       A game being played or read back: the start position, every move with what the search said about it, the
+       result and which color the engine played, or '-' when it played both.
+     */
+    static class Game {
+        final long startTime;
+        final char engineColor;
+        final int startMoveNum;
+        final char startSide;
+        final char[] startBoard = new char[Position.squares];
+        byte result = unfinished;
+        int moveCount;
+        int[] moves = new int[2 * Position.moveLimit + 2];
+        int[] scores = new int[moves.length];
+        int[] depths = new int[moves.length];
+        int[] times = new int[moves.length];  // milliseconds
+
+        Game(Position start, char engineColor) {
+            this(System.currentTimeMillis(), engineColor, start.moveNumber(), start.sideToMove());
+            for(int sq = 0; sq < Position.squares; ++sq)
+                startBoard[sq] = start.pieceAt(sq);
+        }
+
+        private Game(long startTime, char engineColor, int startMoveNum, char startSide) {
+            this.startTime = startTime;
+            this.engineColor = engineColor;
+            this.startMoveNum = startMoveNum;
+            this.startSide = startSide;
+        }
+
+        /*
+           Adds a move. Moves the engine did not search, such as the opponent's on a server, get depth 0.
+         */
+        void addMove(int move, int score, int depth, long timeNanos){
+            if(moveCount == moves.length) {
+                moves = Arrays.copyOf(moves, moveCount * 2);
+                scores = Arrays.copyOf(scores, moveCount * 2);
+                depths = Arrays.copyOf(depths, moveCount * 2);
+                times = Arrays.copyOf(times, moveCount * 2);
+            }
+            moves[moveCount] = move & Position.squaresMask;
+            scores[moveCount] = score;
+            depths[moveCount] = Math.min(depth, Byte.MAX_VALUE);
+            times[moveCount] = (int) Math.min(timeNanos / 1000000, Integer.MAX_VALUE);
+            ++moveCount;
+        }
+
+        /*
+           The position the game started from, in a new Position for replaying the moves with makeMove.
+         */
+        Position startPosition(){
+            StringBuilder text = new StringBuilder();
+            text.append(startMoveNum).append(' ').append(startSide).append('\n');
+            for(int i = 0; i < Position.rows; ++i)
+                text.append(startBoard, i * Position.cols, Position.cols).append('\n');
+            return new Position(text.toString());
+        }
+
+        int bytes(){
+            return gameHeaderBytes + moveCount * moveBytes;
+        }
+    }
+
+    private GameLog(FileChannel data, FileChannel index) {
+        this.data = data;
+        this.index = index;
+    }
+
+    /*
+       Opens the log for appending, creating it and its index when they do not exist yet.
+     */
+    static GameLog open(Path file) throws IOException {
+        FileChannel data = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        FileChannel index = FileChannel.open(indexFile(file), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try (FileLock lock = data.lock()) {  // another process may be creating the same log
+            checkHeader(data, magic, file);
+            checkHeader(index, indexMagic, file);
+        } catch (IOException e){
+            data.close();
+            index.close();
+            throw e;
+        }
+        return new GameLog(data, index);
+    }
+
+    static Path indexFile(Path file){
+        return file.resolveSibling(file.getFileName() + ".idx");
+    }
+
+    private static void checkHeader(FileChannel channel, int expected, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(fileHeaderBytes);
+        if(channel.size() == 0) {
+            header.putInt(expected).putInt(version).flip();
+            writeFully(channel, 0, header);
+            return;
+        }
+        readFully(channel, 0, header);
+        if(header.getInt(0) != expected || header.getInt(4) != version)
+            throw new IOException("not a game log: " + file);
+    }
+
+    /*
+       Writes a finished game and its index entry and returns its number. Safe to call from every game of a host
+       at once, and from engines in other processes sharing the log: a lock on the log file is held from reading
+       its size until the index entry is written. The record goes in before the index entry, so a crash in between
+       leaves an unindexed record but never an index entry pointing past the end of the log.
+     */
+    synchronized long append(Game game) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(game.bytes());
+        record.putInt(game.moveCount).putLong(game.startTime).put(game.result).put((byte) game.engineColor)
+                .putShort((short) game.startMoveNum).put((byte) game.startSide);
+        for(char pc : game.startBoard)
+            record.put((byte) pc);
+        for(int i = 0; i < game.moveCount; ++i)
+            record.putShort((short) game.moves[i]).putInt(game.scores[i]).put((byte) game.depths[i])
+                    .putInt(game.times[i]);
+        record.flip();
+        try (FileLock lock = data.lock()) {
+            long offset = data.size();
+            writeFully(data, offset, record);
+
+            ByteBuffer entry = ByteBuffer.allocate(indexEntryBytes);
+            entry.putLong(offset).flip();
+            long number = (index.size() - fileHeaderBytes) / indexEntryBytes;
+            writeFully(index, fileHeaderBytes + number * indexEntryBytes, entry);
+            return number;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        data.close();
+        index.close();
+    }
+
+    /*
+       Read side of the log, for the replay tool and anything mining the games.
+     */
+    static class Reader implements Closeable {
+        private final FileChannel data;
+        private final FileChannel index;
+        private final long gameCount;
+        private final ByteBuffer header = ByteBuffer.allocate(gameHeaderBytes);
+        private final ByteBuffer entry = ByteBuffer.allocate(indexEntryBytes);
+
+        Reader(Path file) throws IOException {
+            data = FileChannel.open(file, StandardOpenOption.READ);
+            index = FileChannel.open(indexFile(file), StandardOpenOption.READ);
+            ByteBuffer fileHeader = ByteBuffer.allocate(fileHeaderBytes);
+            readFully(data, 0, fileHeader);
+            if(fileHeader.getInt(0) != magic || fileHeader.getInt(4) != version)
+                throw new IOException("not a game log: " + file);
+            fileHeader.clear();
+            readFully(index, 0, fileHeader);
+            if(fileHeader.getInt(0) != indexMagic || fileHeader.getInt(4) != version)
+                throw new IOException("not a game log index: " + indexFile(file));
+            gameCount = (index.size() - fileHeaderBytes) / indexEntryBytes;
+        }
+
+        long gameCount(){
+            return gameCount;
+        }
+
+        Game read(long number) throws IOException {
+            if(number < 0 || number >= gameCount)
+                throw new IOException("no game " + number + ", the log holds " + gameCount);
+            entry.clear();
+            readFully(index, fileHeaderBytes + number * indexEntryBytes, entry);
+            long offset = entry.getLong(0);
+            header.clear();
+            readFully(data, offset, header);
+            header.flip();
+            int moveCount = header.getInt();
+            long startTime = header.getLong();
+            byte result = header.get();
+            char engineColor = (char) header.get();
+            int startMoveNum = header.getShort();
+            char startSide = (char) header.get();
+            Game game = new Game(startTime, engineColor, startMoveNum, startSide);
+            game.result = result;
+            for(int sq = 0; sq < Position.squares; ++sq)
+                game.startBoard[sq] = (char) header.get();
+
+            ByteBuffer moves = ByteBuffer.allocate(moveCount * moveBytes);
+            readFully(data, offset + gameHeaderBytes, moves);
+            moves.flip();
+            for(int i = 0; i < moveCount; ++i){
+                int move = moves.getShort();
+                int score = moves.getInt();
+                int depth = moves.get();
+                game.addMove(move, score, depth, moves.getInt() * 1000000L);
+            }
+            return game;
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+            index.close();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private static void readFully(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()){
+            int read = channel.read(buffer, position);
+            if(read < 0)
+                throw new EOFException("game log ends in the middle of a record");
+            position += read;
+        }
+    }
+}
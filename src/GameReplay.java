@@ -0,0 +1,88 @@
+/*
+   Reads the game log written by GameLog. With a game number it seeks straight to that game through the index and
+   prints its moves with the score, depth and time the engine recorded, replaying them on a Position to show the
+   board after each move when asked. Without one it replays every game in the log, checking each move against
+   the generated moves, and prints result counts and the replay speed.
+
+   Usage: java GameReplay <log file> [game number] [--boards]
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class GameReplay {
+    public static void main(String[] args) throws IOException {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        boolean boards = arguments.remove("--boards");
+        if(arguments.isEmpty() || arguments.size() > 2) {
+            System.out.println("usage: java GameReplay <log file> [game number] [--boards]");
+            return;
+        }
+        try (GameLog.Reader reader = new GameLog.Reader(Paths.get(arguments.get(0)))) {
+            if(arguments.size() == 2)
+                printGame(reader.read(Long.parseLong(arguments.get(1))), boards);
+            else
+                replayAll(reader);
+        }
+    }
+
+    private static void printGame(GameLog.Game game, boolean boards){
+        System.out.println("game started=" + new Date(game.startTime) + " engine=" + game.engineColor + " result="
+                + resultText(game.result) + " moves=" + game.moveCount);
+        Position position = game.startPosition();
+        System.out.print(position.toText());
+        for(int i = 0; i < game.moveCount; ++i){
+            char mover = position.sideToMove();
+            int move = position.makeMove(game.moves[i]);
+            System.out.println((i + 1) + ". " + mover + " " + Position.encodeMove(move)
+                    + (game.depths[i] > 0 ? " score=" + game.scores[i] + " depth=" + game.depths[i]
+                    + " time_ms=" + game.times[i] : ""));
+            if(boards)
+                System.out.print(position.toText());
+        }
+    }
+
+    /*
+       Replays every game from its start position. A move that is not among the generated moves means the log
+       does not match the rules it was written with, and the game is counted as bad.
+     */
+    private static void replayAll(GameLog.Reader reader) throws IOException {
+        long startTime = System.nanoTime();
+        long[] results = new long[4];  // white wins, draws, black wins, unfinished
+        long positions = 0;
+        long badGames = 0;
+        int[] moves = new int[Position.maxMoves];
+        for(long n = 0; n < reader.gameCount(); ++n){
+            GameLog.Game game = reader.read(n);
+            Position position = game.startPosition();
+            boolean legal = true;
+            for(int i = 0; i < game.moveCount && legal; ++i){
+                int moveCount = position.generateMoves(moves, false);
+                legal = false;
+                for(int j = 0; j < moveCount && !legal; ++j)
+                    legal = Position.sameSquares(moves[j], game.moves[i]);
+                if(legal) {
+                    position.makeMove(game.moves[i]);
+                    ++positions;
+                }
+            }
+            badGames += (legal ? 0 : 1);
+            ++results[game.result == GameLog.whiteWins ? 0 : game.result == GameLog.draw ? 1
+                    : game.result == GameLog.blackWins ? 2 : 3];
+        }
+        long elapsed = Math.max(1, System.nanoTime() - startTime);
+        System.out.println("replay games=" + reader.gameCount() + " white_wins=" + results[0] + " draws=" + results[1]
+                + " black_wins=" + results[2] + " unfinished=" + results[3] + " bad=" + badGames + " positions="
+                + positions + " time_ms=" + elapsed / 1000000 + " positions_per_s=" + positions * 1000000000L / elapsed);
+    }
+
+    private static String resultText(byte result){
+        switch (result){
+            case GameLog.whiteWins: return "1-0";
+            case GameLog.draw: return "1/2-1/2";
+            case GameLog.blackWins: return "0-1";
+            default: return "unfinished";
+        }
+    }
+}
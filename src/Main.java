@@ -1,6 +1,50 @@
+import java.io.*;
+import java.nio.file.*;
+
 public class Main{
     public static void main(String[] args){
-        MiniChess mc = new MiniChess();
+        GameLog gameLog = null;
+        try {
+            gameLog = GameLog.open(Paths.get("games.mgl"));
+        } catch (IOException e){
+            System.out.println(e.getMessage());
+        }
+        MiniChess mc = setUp(gameLog);
+        Warmup.run(Warmup.defaultBudget);  // compile the search before the clock starts
         mc.playOnServer(0, "19410", '?');
     }
+
+    /*
+       Builds the engine with whatever weights, book and tablebases sit in the working directory. Warmup uses this
+       too, so that its training game loads the same classes as a real one.
+     */
+    static MiniChess setUp(GameLog gameLog){
+        Path weights = Paths.get("minichess.weights");
+        if(Files.exists(weights)) {
+            try {
+                Position.setWeights(EvaluationWeights.read(weights));
+            } catch (IOException e){
+                System.out.println(e.getMessage());
+            }
+        }
+        MiniChess mc = new MiniChess();
+        Path book = Paths.get("minichess.book");
+        if(Files.exists(book)) {
+            try {
+                mc.setOpeningBook(new OpeningBook(book));
+            } catch (IOException e){
+                System.out.println(e.getMessage());
+            }
+        }
+        Path tables = Paths.get("tablebases");
+        if(Files.isDirectory(tables)) {
+            try {
+                mc.setTablebases(Tablebases.load(tables));
+            } catch (IOException e){
+                System.out.println(e.getMessage());
+            }
+        }
+        mc.setGameLog(gameLog);
+        return mc;
+    }
 }
@@ -17,432 +17,467 @@ https://en.wikipedia.org/wiki/Negamax
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
+/*
+   The engine: a Position, a Search on it with Lazy SMP helpers, the clock, the opening book and pondering, plus
+   the IMCS game loop. The rules and board live in Position and the search in Search, so tools that only need
+   moves or a plain fixed-depth search use those directly.
+ */
 public class MiniChess {
-    private char currentTurn; // keeps track of the current player turn 'W' or 'B'
-    private int moveNum;
-    private static final int depthLimit = 6;
-    private static final int cols = 5;
-    private static final int rows = 6;
-    private int[] moveToMake = null;
-    private static final int drawDepth = 40;
+    private int moveToMake = Position.noMove;
     private static final long timeLimit = 5000000000L;
-    private HashMap<String, Character> whitePieces = new HashMap<>();
-    private HashMap<String, Character> blackPieces = new HashMap<>();
-    private static final HashMap<Character, Integer> pieceValues = new HashMap<>();
+    private static final long gameTime = 300000000000L;  // total clock per side for a game
+    private TimeManager timeManager = new TimeManager(gameTime, timeLimit);
+    private boolean logSearches = true;  // print the summary line of every search
+
+    private static final int defaultTableSizeMB = 64;
+    static final String defaultBoard =
+                                       "0 W\n" +
+                                       "kqbnr\n" +
+                                       "ppppp\n" +
+                                       ".....\n" +
+                                       ".....\n" +
+                                       "PPPPP\n" +
+                                       "RNBQK\n";
+    private final TranspositionTable transpositionTable;
+    private final Position position;
+    private final Search search;
+
+    // Lazy SMP: helper searches run the same root on their own copies of the position and share the table
+    private final int threads;
+    private Search[] helpers;
+    private ExecutorService searchPool;  // runs the helper searches, shared between games when set by a host
+    private final Random random = new Random();
+    private boolean ponder = true;  // search on the opponent's time while waiting for its move
+    private Thread ponderThread;
+    private OpeningBook openingBook;
+    private GameLog gameLog;
+    private boolean pondered;  // the table already holds this turn's entries from pondering
 
     MiniChess() {
-        initializePieceValues();
-
-        String defaultBoard =
-                              "0 W\n" +
-                              "kqbnr\n" +
-                              "ppppp\n" +
-                              ".....\n" +
-                              ".....\n" +
-                              "PPPPP\n" +
-                              "RNBQK\n";
-
-        Scanner input = new Scanner(defaultBoard);
-
-        int moveNum = input.nextInt();
-        assert moveNum >= 0;
-
-        String curTurn = input.next();
-        if(!curTurn.isEmpty())
-            currentTurn = curTurn.charAt(0);
-        input.nextLine();
-        assert currentTurn == 'W' || currentTurn == 'B';
-
-        ArrayList<String> inputLines = new ArrayList<>();  // read in input lines into an array list
-
-        String lineRead;
-        while(input.hasNextLine()) {
-            lineRead = input.nextLine();
-            if(lineRead.isEmpty())  // one encounter empty line it is end of input, used for console input
-                break;
-            inputLines.add(lineRead);
-        }
+        this(defaultTableSizeMB, Runtime.getRuntime().availableProcessors());
+    }
 
-        assert inputLines.size() != 0 && inputLines.size() == rows;
-
-        char[] pieceArray;
-        for (int i = 0; i < inputLines.size(); ++i){
-            pieceArray = inputLines.get(i).toCharArray();
-            assert pieceArray.length == cols;
-            for (int j = 0; j < cols; ++j){
-                char curPos = pieceArray[j];
-                char validPc = Character.toLowerCase(curPos);
-                assert validPc == '.' || validPc == 'p' || validPc == 'k' || validPc == 'q' || validPc == 'b'
-                        || validPc == 'n' || validPc == 'r';
-
-                if(curPos == '.')
-                    continue;
-                if(Character.isUpperCase(curPos)){
-                    whitePieces.put(i + "" + j, curPos);  // add pawn position in format "rowcol" to hash set
-                }
-                else{
-                    blackPieces.put(i + "" + j, curPos);
-                }
-            }
-        }
+    MiniChess(int tableSizeMB, int threads) {
+        this(defaultBoard, tableSizeMB, threads);
+    }
+
+    /*
+       Sets up the given position, in the text format Position reads.
+     */
+    MiniChess(String position, int tableSizeMB, int threads) {
+        transpositionTable = new TranspositionTable(tableSizeMB);
+        this.threads = Math.max(1, threads);
+        this.position = new Position(position);
+        search = new Search(this.position, transpositionTable);
+    }
+
+    /*
+       Replaces the board with the given position, in the same format the constructor takes. The transposition
+       table is kept, entries of other positions simply never match.
+     */
+    void setPosition(String position){
+        this.position.copyFrom(new Position(position));
+    }
+
+    int[] legalMoves(){
+        return position.legalMoves();
+    }
+
+    int getRootScore(){
+        return search.rootScore();
+    }
+
+    int getMoveNum(){
+        return position.moveNumber();
+    }
+
+    char getSideToMove(){
+        return position.sideToMove();
+    }
+
+    SearchStats getStats(){
+        return search.stats();
+    }
+
+    /*
+       Starts a game against a local opponent: a fresh clock with the given total and per-move limit in
+       nanoseconds, and an empty transposition table so that games do not leak into each other.
+     */
+    void startGame(long totalTime, long moveLimit){
+        timeManager = new TimeManager(totalTime, moveLimit);
+        transpositionTable.clear();
+        search.clearHistory();
+        pondered = false;
+    }
+
+    /*
+       Searches the current position on the game clock and returns the move to play.
+     */
+    int chooseMove(){
+        findMove();
+        return moveToMake;
+    }
+
+    /*
+       Plays a move of the game for either side and returns the completed move.
+     */
+    int playGameMove(int move){
+        return position.makeMove(move);
+    }
+
+    public void setLogSearches(boolean logSearches){
+        this.logSearches = logSearches;
     }
 
     public void playOnServer(int offerOrAccept, String offerID, char color) {
+        playOnServer("imcs.svcs.cs.pdx.edu", "3589", "slowclap", "slowclap", offerOrAccept, offerID, color);
+    }
+
+    public void playOnServer(String server, String port, String username, String password,
+                             int offerOrAccept, String offerID, char color) {
+        GameLog.Game game = null;  // set once the server has started the game
         try {
             if((offerID == null) || (offerOrAccept != 0 && offerOrAccept != 1) || (color != 'B' && color != 'W' && color != '?'))
                 return;
             printBoard();
-            Client imcs = new Client("imcs.svcs.cs.pdx.edu", "3589", "slowclap", "slowclap");
+            Client imcs = new Client(server, port, username, password);
             char myColor = '\0';
             if(offerOrAccept == 0)
                 myColor = imcs.accept(offerID, color);
             else if (offerOrAccept == 1)
                 myColor = imcs.offer(color);
-            if(myColor == 'W'){
-                currentTurn = 'W';
+            game = new GameLog.Game(position, myColor);
+            if(myColor == 'W'){  // white moves first, after that both colors wait for the opponent
                 findMove();
-                executeMove(whitePieces, blackPieces, moveToMake);
-                imcs.sendMove(encodeMove(moveToMake));
+                playOwnMove(game);
+                imcs.sendMove(Position.encodeMove(moveToMake), myColor);
+                syncClock(imcs);
                 printBoard();
-                for(int i = 0; i < 41; ++i){
-                    currentTurn = (currentTurn == 'W' ? 'B' : 'W');
-                    String opMove = imcs.getMove();
-                    if(opMove == null)
-                        break;
-                    int[] move = decodeMove(opMove);
-                    executeMove(whitePieces, blackPieces, move);
-                    currentTurn = (currentTurn == 'W' ? 'B' : 'W');
-                    findMove();
-                    executeMove(whitePieces, blackPieces, moveToMake);
-                    imcs.sendMove(encodeMove(moveToMake));
-                }
             }
-            else{
-                currentTurn = 'B';
-                for(int i = 0; i < 41; ++i){
-                    String opMove = imcs.getMove();
-                    if(opMove == null)
-                        break;
-                    int[] move = decodeMove(opMove);
-                    currentTurn = (currentTurn == 'W' ? 'B' : 'W');
-                    executeMove(whitePieces, blackPieces, move);
-                    currentTurn = (currentTurn == 'W' ? 'B' : 'W');
-                    findMove();
-                    executeMove(whitePieces, blackPieces, moveToMake);
-                    imcs.sendMove(encodeMove(moveToMake));
-                }
+            while(position.kingsAlive() && position.pliesLeft() > 0){
+                startPondering();  // think on the opponent's time while blocked waiting for its move
+                String opMove = imcs.getMove();
+                stopPondering(opMove);
+                if(opMove == null)
+                    break;
+                int played = position.makeMove(Position.decodeMove(opMove));
+                game.addMove(played, 0, 0, 0);
+                if(!position.kingsAlive() || position.pliesLeft() <= 0)
+                    break;
+                findMove();
+                playOwnMove(game);
+                imcs.sendMove(Position.encodeMove(moveToMake), myColor);
+                syncClock(imcs);
             }
             imcs.close();
         } catch (IOException e){
+            stopPondering(null);
             System.out.println(e.getMessage());
+        } finally {
+            if(game != null)
+                logGame(game);
         }
     }
 
-    private void initializePieceValues(){
-        pieceValues.put('p', 100);
-        pieceValues.put('b', 300);
-        pieceValues.put('n', 300);
-        pieceValues.put('r', 500);
-        pieceValues.put('q', 900);
-        pieceValues.put('k', 10000000);
+    private void playOwnMove(GameLog.Game game){
+        SearchStats stats = search.stats();
+        position.makeMove(moveToMake);
+        game.addMove(moveToMake, search.rootScore(), stats.depth, stats.timeUsed);
     }
 
-    private int valueState(HashMap<String, Character> wPieces, HashMap<String, Character> bPieces){
-        int whiteValue = 0;
-        int blackValue = 0;
-        int netValue;
-
-        for(Character pc : wPieces.values()){
-            whiteValue += pieceValues.get(Character.toLowerCase(pc));
+    /*
+       Writes a finished server game to the game log, if there is one. A captured king decides the game and
+       reaching the move limit draws it, anything else means the connection ended first.
+     */
+    private void logGame(GameLog.Game game){
+        if(gameLog == null)
+            return;
+        if(!position.kingsAlive())
+            game.result = (position.whiteToMove() ? GameLog.blackWins : GameLog.whiteWins);
+        else if(position.pliesLeft() <= 0)
+            game.result = GameLog.draw;
+        try {
+            gameLog.append(game);
+        } catch (IOException e){
+            System.out.println("game log: " + e.getMessage());
         }
+    }
 
-        for(Character pc : bPieces.values()){
-            blackValue += pieceValues.get(pc);
-        }
+    /*
+       Corrects the locally tracked clock with the time the server reported at the prompt for the move just sent,
+       less the time spent searching since that prompt.
+     */
+    private void syncClock(Client imcs){
+        if(imcs.getMyTimeLeft() >= 0)
+            timeManager.setRemaining(imcs.getMyTimeLeft() * 1000000L - search.stats().timeUsed);
+    }
 
-        if(currentTurn == 'W') {
-            netValue = whiteValue - blackValue;
-        }
-        else {
-            netValue = blackValue - whiteValue;
-        }
+    public void setOpeningBook(OpeningBook openingBook){
+        this.openingBook = openingBook;
+    }
 
-        return netValue;
+    public void setTablebases(Tablebases tablebases){
+        search.setTablebases(tablebases);
+        updateHelpers();
     }
 
-    private void printBoard(){
-        char toPrint;
-        for(int i = 0; i < rows; ++i){
-            for(int j = 0; j < cols; ++j){
-                if(whitePieces.containsKey(i + "" + j))
-                    toPrint = whitePieces.get(i + "" + j);
-                else if(blackPieces.containsKey(i + "" + j))
-                    toPrint = blackPieces.get(i + "" + j);
-                else
-                    toPrint = '.';
-                System.out.print(toPrint);
-            }
-            System.out.println();
-        }
+    /*
+       Records every server game played from now on in the given log, which may be shared between games.
+     */
+    public void setGameLog(GameLog gameLog){
+        this.gameLog = gameLog;
     }
 
-    private void findMove(){
-        moveToMake = null;
-        ArrayList<int[]> moves = generateMoves(whitePieces, blackPieces);  // get list of moves
-        HashMap<String, Character> copyPiecesW = new HashMap<>(whitePieces);  // create copy of white and black pawn hash sets
-        HashMap<String, Character> copyPiecesB = new HashMap<>(blackPieces);  // create copy of white and black pawn hash sets
-        Collections.shuffle(moves);
-        int depth = 1;
-        long startTime = System.nanoTime();
-        while(depth <= drawDepth) {
-            int minVal = Integer.MAX_VALUE;
-            for (int[] move : moves) {
-                char[] moveInfo = executeMove(copyPiecesW, copyPiecesB, move);
-                currentTurn = (currentTurn == 'W' ? 'B' : 'W');
-                int val = negamaxSearch(copyPiecesW, copyPiecesB, depthLimit, -(Integer.MAX_VALUE), Integer.MAX_VALUE);
-                currentTurn = (currentTurn == 'W' ? 'B' : 'W');
-                undoMove(copyPiecesW, copyPiecesB, move, moveInfo);
-                if (val < minVal) {
-                    moveToMake = move;
-                    minVal = val;
-                }
-            }
-            depth++;
-            long endTime = System.nanoTime();
-            if(endTime - startTime >= timeLimit){
-                System.out.println("Depth: " + depth);
-                return;
-            }
-        }
+    public void setPonder(boolean ponder){
+        this.ponder = ponder;
     }
 
-    private int negamaxSearch(HashMap<String, Character> wPieces, HashMap<String, Character> bPieces, int depth,
-                                int alpha, int beta){
-        if(depth <= 0 || !wPieces.containsValue('K') || !bPieces.containsValue('k'))
-            return valueState(wPieces, bPieces);
+    public void setUseStaticExchange(boolean useStaticExchange){
+        search.setUseStaticExchange(useStaticExchange);
+        updateHelpers();
+    }
 
-        ArrayList<int[]> moves = generateMoves(wPieces, bPieces);  // get list of moves
+    public void setUseNullMove(boolean useNullMove){
+        search.setUseNullMove(useNullMove);
+        updateHelpers();
+    }
+
+    public void setUseLateMoveReductions(boolean useLateMoveReductions){
+        search.setUseLateMoveReductions(useLateMoveReductions);
+        updateHelpers();
+    }
 
-        if(moves == null || moves.size() == 0) {  // if no moves left, signifies a loss for side on move
-            return -10000000;
+    public void setUseFutilityPruning(boolean useFutilityPruning){
+        search.setUseFutilityPruning(useFutilityPruning);
+        updateHelpers();
+    }
+
+    private void updateHelpers(){
+        if(helpers != null) {
+            for(Search helper : helpers)
+                helper.copySettings(search);
         }
+    }
 
-        Collections.shuffle(moves);
-        int bestValue = Integer.MIN_VALUE;
-        int val;
-        for(int[] move : moves){
-            char[] moveInfo = executeMove(wPieces, bPieces, move);  // execute move on copies
-            currentTurn = (currentTurn == 'W' ? 'B' : 'W');  // flip the current turn before recursive call
-            val = - negamaxSearch(wPieces, bPieces, depth-1, -beta, -alpha);  // negate the return value of the recursive call (negamax)
-            currentTurn = (currentTurn == 'W' ? 'B' : 'W');  // flip back on recursive return
-            undoMove(wPieces, bPieces, move, moveInfo);
-            bestValue = Math.max(bestValue, val);
-            alpha = Math.max(alpha, val);
-            if(alpha >= beta)
-                break;
+    private void printBoard(){
+        for(int i = 0; i < Position.rows; ++i){
+            for(int j = 0; j < Position.cols; ++j){
+                System.out.print(position.pieceAt(i * Position.cols + j));
+            }
+            System.out.println();
         }
+    }
 
-        return bestValue;
+    /*
+       Searches the current position until the deadline, the depth or the node limit is reached, or until
+       stopSearch is called from another thread, and returns the best move. The helpers search along as in a
+       game. The listener hears about every iteration the main search completes.
+     */
+    int searchWithLimits(long deadline, int maxDepth, long nodeLimit, Search.Listener listener){
+        long startTime = System.nanoTime();
+        search.setDeadline(deadline);
+        search.setNodeLimit(nodeLimit);
+        search.setListener(listener);
+        transpositionTable.newSearch();
+        long budget = (deadline == Long.MAX_VALUE ? Long.MAX_VALUE : deadline - startTime);  // as findMove's budget
+        Future<?>[] workers = startHelpers(Long.MAX_VALUE);
+        int completedDepth = search.iterativeDeepening(startTime, budget, Math.min(maxDepth, Search.maxPly - 1), 0);
+        search.requestStop();
+        joinHelpers(workers);
+        search.setNodeLimit(Long.MAX_VALUE);
+        search.setListener(null);
+
+        SearchStats stats = search.stats();
+        for(Search helper : helpers)
+            stats.add(helper.stats());
+        stats.timeUsed = System.nanoTime() - startTime;
+        stats.principalVariation = search.principalVariation(completedDepth);
+        moveToMake = search.bestMove();
+        return moveToMake;
     }
 
     /*
-       This function will take hash sets of white and black pawns and an int array of size 4 of a move which
-       gives the starting position row and column and the position to move to row and column. This function will
-       modify the hash sets directly as it assumes copies are saved if necessary.
+       Clears the stop flag before a search is started on another thread, so that a stop sent right after the
+       start is not lost.
      */
-    private char[] executeMove(HashMap<String, Character> wPieces, HashMap<String, Character> bPieces, int[] move){
-        char[] moveInfo = new char[]{Character.MIN_VALUE, Character.MIN_VALUE};
+    void resetStop(){
+        search.clearStop();
+    }
 
-        HashMap<String, Character> onMovePawns;
-        HashMap<String, Character> waitingPawns;
+    void stopSearch(){
+        search.requestStop();
+    }
 
-        if(currentTurn == 'W') {  // figure out who is on move and who is waiting
-            onMovePawns = wPieces;
-            waitingPawns = bPieces;
-        }
-        else {
-            onMovePawns = bPieces;
-            waitingPawns = wPieces;
-        }
+    /*
+       Moves the deadline of the running search, for a ponder search that becomes the real one.
+     */
+    void setSearchDeadline(long deadline){
+        search.setDeadline(deadline);
+    }
 
-        String startLoc = move[0] + "" + move[1];
-        String endLoc = move[2] + "" + move[3];
+    /*
+       Thinking time for the next move with the given time left on our clock in nanoseconds.
+     */
+    long clockBudget(long remaining){
+        timeManager.setRemaining(remaining);
+        return timeManager.budget(Position.moveLimit - position.moveNumber());
+    }
 
-        if(waitingPawns.containsKey(endLoc)){  // if the position to move to has an opponent piece remove it
-            moveInfo[1] = waitingPawns.get(endLoc);
-            waitingPawns.remove(endLoc);
+    /*
+       Searches the current position and leaves the move to play in moveToMake. The time manager decides the
+       deadline, which the search checks every 1024 nodes so that an iteration can be abandoned part way through.
+       When more than one thread is configured the helpers run the same iterative deepening on their own position
+       copies until this thread finishes, filling the shared transposition table as they go (Lazy SMP).
+     */
+    private void findMove(){
+        long startTime = System.nanoTime();
+        SearchStats stats = search.stats();
+        int moveNum = position.moveNumber();
+        if(openingBook != null) {
+            int bookMove = probeBook();
+            if(bookMove != Position.noMove) {
+                moveToMake = bookMove;
+                stats.reset();
+                stats.timeUsed = System.nanoTime() - startTime;
+                timeManager.moveFinished(stats.timeUsed);
+                if(logSearches)
+                    System.out.println("book move=" + moveNum + " pv=" + Position.encodeMove(bookMove));
+                return;
+            }
         }
 
-        try {
-            if (Character.toLowerCase(onMovePawns.get(startLoc)) == 'p') {
-                if (move[2] == 0 || move[2] == 5) {
-                    if (currentTurn == 'W')
-                        onMovePawns.put(endLoc, 'Q');
-                    else
-                        onMovePawns.put(endLoc, 'q');
-                    moveInfo[0] = 'T';
-                } else
-                    onMovePawns.put(endLoc, onMovePawns.get(startLoc));  // add the new position for on move side
-            } else
-                onMovePawns.put(endLoc, onMovePawns.get(startLoc));  // add the new position for on move side
-            onMovePawns.remove(startLoc);  // remove the old position for on move side
-        } catch (NullPointerException e){
-            System.out.println(e.getMessage());
-        }
-        return moveInfo;  // return move info
+        long budget = timeManager.budget(Position.moveLimit - moveNum);
+        search.setDeadline(startTime + budget);
+        search.clearStop();
+        if(!pondered)  // entries written while pondering belong to this search
+            transpositionTable.newSearch();
+        pondered = false;
+
+        Future<?>[] workers = startHelpers(startTime + budget);
+        int completedDepth = search.iterativeDeepening(startTime, budget, Search.maxPly - 1, 0);
+        search.requestStop();
+        joinHelpers(workers);
+        moveToMake = search.bestMove();
+
+        long timeUsed = System.nanoTime() - startTime;
+        timeManager.moveFinished(timeUsed);
+        for(Search helper : helpers)
+            stats.add(helper.stats());
+        stats.timeUsed = timeUsed;
+        stats.principalVariation = search.principalVariation(completedDepth);
+        if(logSearches)
+            System.out.println(stats.toLogLine(moveNum, search.rootScore()));
+        stats.commitEvent(moveNum, search.rootScore());
     }
 
-    private void undoMove(HashMap<String, Character> wPieces, HashMap<String, Character> bPieces, int[] move, char[] moveInfo){
-        HashMap<String, Character> onMovePawns;
-        HashMap<String, Character> waitingPawns;
-
-        if(currentTurn == 'W') {  // figure out who is on move and who is waiting
-            onMovePawns = wPieces;
-            waitingPawns = bPieces;
-        }
-        else {
-            onMovePawns = bPieces;
-            waitingPawns = wPieces;
+    /*
+       Looks the current position up in the opening book and returns the generated move matching the book move,
+       or noMove if the position is not in the book.
+     */
+    private int probeBook(){
+        int bookMove = openingBook.lookup(position.hashKey(), random);
+        if(bookMove == Position.noMove)
+            return Position.noMove;
+        for(int move : position.legalMoves()){
+            if(Position.sameSquares(move, bookMove))
+                return move;
         }
-
-        String startLoc = move[0] + "" + move[1];
-        String endLoc = move[2] + "" + move[3];
-
-        char movedPiece = onMovePawns.get(endLoc);
-        onMovePawns.remove(endLoc);
-        if(moveInfo[1] != Character.MIN_VALUE)
-            waitingPawns.put(endLoc, moveInfo[1]);
-
-        if(moveInfo[0] == 'T')
-            onMovePawns.put(startLoc, currentTurn == 'W' ? 'P' : 'p');
-        else
-            onMovePawns.put(startLoc, movedPiece);
+        return Position.noMove;
     }
 
-    private int[] decodeMove(String toDecode){
-        assert toDecode.length() == 5;
-        int[] move = new int[4];
-        int[] decoder = new int[]{5, 4, 3, 2, 1, 0};
-        move[0] = decoder[Character.getNumericValue(toDecode.charAt(1)) - 1];
-        move[1] = toDecode.charAt(0) - 'a';
-        move[2] = decoder[Character.getNumericValue(toDecode.charAt(4)) - 1];
-        move[3] = toDecode.charAt(3) - 'a';
-        return move;
+    /*
+       Starts searching the current position, where the opponent is on move, on a background thread with no
+       deadline. Every reply gets searched, so whatever the opponent plays the transposition table already holds
+       results for our next search, and most of all for the reply the ponder search expects.
+     */
+    private void startPondering(){
+        if(!ponder || !position.kingsAlive())
+            return;
+        search.setDeadline(Long.MAX_VALUE);
+        search.clearStop();
+        transpositionTable.newSearch();
+        ponderThread = new Thread(() -> {
+            Future<?>[] workers = startHelpers(Long.MAX_VALUE);
+            search.iterativeDeepening(System.nanoTime(), Long.MAX_VALUE, Search.maxPly - 1, 0);
+            search.requestStop();
+            joinHelpers(workers);
+        });
+        ponderThread.setDaemon(true);
+        ponderThread.start();
     }
 
-    private String encodeMove(int[] toEncode){
-        assert toEncode.length == 4;
-        int[] intEncoder = new int[]{6, 5, 4, 3, 2, 1};
-        char[] charEncoder = new char[]{'a', 'b', 'c', 'd', 'e'};
-        StringBuilder encoded = new StringBuilder();
-        encoded.append(charEncoder[toEncode[1]])
-                .append(intEncoder[toEncode[0]])
-                .append('-')
-                .append(charEncoder[toEncode[3]])
-                .append(intEncoder[toEncode[2]]);
-        return encoded.toString();
+    /*
+       Stops the ponder search once the opponent's move has arrived. The abort is polled every 1024 nodes so this
+       returns almost at once, and reports whether the opponent played the move the ponder search expected.
+     */
+    private void stopPondering(String opMove){
+        if(ponderThread == null)
+            return;
+        search.requestStop();
+        try {
+            ponderThread.join();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        ponderThread = null;
+        pondered = true;
+        int predicted = search.bestMove();
+        SearchStats stats = search.stats();
+        if(opMove != null && predicted != Position.noMove) {
+            boolean hit = Position.sameSquares(predicted, Position.decodeMove(opMove));
+            System.out.println("ponder " + (hit ? "hit" : "miss") + " predicted=" + Position.encodeMove(predicted)
+                    + " depth=" + stats.depth + " nodes=" + stats.nodes);
+        }
     }
 
     /*
-       This function will generate a list of all possible moves for the side that is on move. An ArrayList of
-       int arrays will be returned specifying the starting position coordinated and the coordinates of position
-       to move to.
+       Waits for the helper searches to finish. Helpers that were still queued in a busy shared pool when the
+       search ended see the stop flag as soon as they start and return at once.
      */
-    private ArrayList<int[]> generateMoves(HashMap<String, Character> wPieces, HashMap<String, Character> bPieces){
-        ArrayList<int[]> moves = new ArrayList<>();
-        int row, col;
-        HashMap<String, Character> onMove;
-
-        if(currentTurn == 'W')
-            onMove = wPieces;
-        else
-            onMove = bPieces;
-
-        for(String pos : onMove.keySet()){  // for each pawn for the side on move
-            row = Character.getNumericValue(pos.charAt(0));  // get the pawn exact coordinates
-            col = Character.getNumericValue(pos.charAt(1));
-            char pc = onMove.get(pos);
-            boolean stopShort = false;
-            Character curPc = Character.toLowerCase(pc);
-            switch (curPc){
-                case 'k':
-                    stopShort = true;
-                case 'q':
-                    moves.addAll(generatePieceMoves(wPieces, bPieces, row, col, 1, 0, stopShort, 1));
-                    moves.addAll(generatePieceMoves(wPieces, bPieces, row, col, 1, 1, stopShort, 1));
-                    break;
-                case 'b':
-                    moves.addAll(generatePieceMoves(wPieces, bPieces, row, col, 1, 1, false, 1));
-                    moves.addAll(generatePieceMoves(wPieces, bPieces, row, col, 1, 0, true, 0));
-                    break;
-                case 'r':
-                    moves.addAll(generatePieceMoves(wPieces, bPieces, row, col, 1, 0, false, 1));
-                    break;
-                case 'n':
-                    moves.addAll(generatePieceMoves(wPieces, bPieces, row, col, 2, 1, true, 1));
-                    moves.addAll(generatePieceMoves(wPieces, bPieces, row, col, 2, -1, true, 1));
-                    break;
-                case 'p':
-                    int dir = -1;
-                    if(Character.isLowerCase(pc))
-                        dir = 1;
-                    moves.addAll(generatePieceMoves(wPieces, bPieces, row, col, dir, 0, true, 0));
-                    moves.addAll(generatePieceMoves(wPieces, bPieces, row, col, dir, -1, true, 2));
-                    moves.addAll(generatePieceMoves(wPieces, bPieces, row, col, dir, 1, true, 2));
-                    break;
+    private static void joinHelpers(Future<?>[] workers){
+        for(Future<?> worker : workers){
+            try {
+                worker.get();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e){
+                System.out.println("helper search failed: " + e.getCause());
             }
         }
-        return moves;  // return the list of moves
     }
 
-    private ArrayList<int[]> generatePieceMoves(HashMap<String, Character> wPieces, HashMap<String, Character> bPieces,
-                                                    int rowPos, int colPos, int rowToMov, int colToMove,
-                                                    boolean stopShort, int captureSet) {
-        ArrayList<int[]> moves = new ArrayList<>();
-
-        Character curPc = wPieces.get(rowPos + "" + colPos);
-        if(curPc == null)
-            curPc = bPieces.get(rowPos + "" + colPos);
-
-        for(int i = 0; i < 4; ++i){
-            int rowTemp = rowPos;
-            int colTemp = colPos;
-            boolean stopShortTemp = stopShort;
-
-            do{
-                rowTemp += rowToMov;
-                colTemp += colToMove;
-
-                if(rowTemp >= rows || colTemp >= cols || rowTemp < 0 || colTemp < 0)
-                    break;
-
-                Character pc = wPieces.get(rowTemp + "" + colTemp);
-                if(pc == null)
-                    pc = bPieces.get(rowTemp + "" + colTemp);
-
-                if(pc != null){
-                    if(Character.isUpperCase(pc) == Character.isUpperCase(curPc) ||
-                            Character.isLowerCase(pc) == Character.isLowerCase(curPc))
-                        break;
-                    if(captureSet == 0)
-                        break;
-                    stopShortTemp = true;
-                }
-                else if(captureSet == 2)
-                    break;
-
-                moves.add(new int[]{rowPos, colPos, rowTemp, colTemp});
-            }while(!stopShortTemp);
-
-            if(Character.toLowerCase(curPc) == 'p')
-                break;
-
-            int temp = colToMove;
-            colToMove = - rowToMov;
-            rowToMov = temp;
+    private Future<?>[] startHelpers(long deadline){
+        if(helpers == null) {
+            helpers = new Search[threads - 1];
+            for(int i = 0; i < helpers.length; ++i)
+                helpers[i] = new Search(search);
         }
+        if(searchPool == null && helpers.length > 0)
+            searchPool = Executors.newFixedThreadPool(helpers.length, runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        Future<?>[] workers = new Future<?>[helpers.length];
+        for(int i = 0; i < helpers.length; ++i){
+            Search helper = helpers[i];
+            int helperId = i + 1;
+            helper.position().copyFrom(position);
+            helper.setDeadline(deadline);
+            workers[i] = searchPool.submit(() -> {
+                if(!search.stopRequested())
+                    helper.iterativeDeepening(System.nanoTime(), Long.MAX_VALUE, Search.maxPly - 1, helperId);
+            });
+        }
+        return workers;
+    }
 
-        return moves;
+    /*
+       Lets several games draw their helper threads from one bounded pool instead of each starting its own.
+     */
+    public void setSearchPool(ExecutorService searchPool){
+        this.searchPool = searchPool;
     }
 }
@@ -0,0 +1,90 @@
+/*
+   Read side of the opening book written by BookBuilder. The file is a small header followed by fixed-size records
+   sorted by Zobrist key, each holding the key, a book move and its weight. The file is memory-mapped and looked up
+   with a binary search, so probing it from findMove allocates nothing.
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Random;
+
+public class OpeningBook {
+    static final int magic = 0x4D43424B;  // "MCBK"
+    static final int version = 1;
+    static final int headerBytes = 12;  // magic, version, record count
+    static final int recordBytes = 12;  // key, move, weight
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    OpeningBook(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if(buffer.limit() < headerBytes || buffer.getInt(0) != magic || buffer.getInt(4) != version)
+            throw new IOException("not an opening book: " + file);
+        count = buffer.getInt(8);
+        if((long) headerBytes + (long) count * recordBytes > buffer.limit())
+            throw new IOException("truncated opening book: " + file);
+    }
+
+    public int size(){
+        return count;
+    }
+
+    /*
+       Returns a book move for the position with the given key, chosen at random in proportion to the weights of
+       the moves stored for it, or 0 if the position is not in the book. The move only holds the from and to
+       squares, callers check it against the generated moves.
+     */
+    public int lookup(long key, Random random){
+        int first = firstRecord(key);
+        if(first < 0)
+            return 0;
+        int total = 0;
+        for(int i = first; i < count && recordKey(i) == key; ++i)
+            total += recordWeight(i);
+        if(total <= 0)
+            return 0;
+        int pick = random.nextInt(total);
+        for(int i = first; i < count && recordKey(i) == key; ++i){
+            pick -= recordWeight(i);
+            if(pick < 0)
+                return recordMove(i);
+        }
+        return 0;
+    }
+
+    private int firstRecord(long key){
+        int low = 0;
+        int high = count - 1;
+        int found = -1;
+        while(low <= high){  // find the lowest index with this key, several moves can share it
+            int mid = (low + high) >>> 1;
+            long midKey = recordKey(mid);
+            if(midKey < key)
+                low = mid + 1;
+            else {
+                if(midKey == key)
+                    found = mid;
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    private long recordKey(int index){
+        return buffer.getLong(headerBytes + index * recordBytes);
+    }
+
+    private int recordMove(int index){
+        return buffer.getShort(headerBytes + index * recordBytes + 8) & 0xFFFF;
+    }
+
+    private int recordWeight(int index){
+        return buffer.getShort(headerBytes + index * recordBytes + 10) & 0xFFFF;
+    }
+}
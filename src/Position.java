@@ -0,0 +1,828 @@
+/*
+   A MiniChess position: the board, the side to move and the move number, plus the Zobrist key, running evaluation
+   and piece count derived from them. A position is set up from text or from an array of squares and afterwards
+   only changes through makeMove and unmakeMove, which keep everything derived current and hand the move to the
+   other side. Positions share nothing but static tables, so independent searches, perft runs and tools can each
+   work on their own position in parallel.
+ */
+
+import java.util.*;
+
+public class Position {
+    static final int cols = 5;
+    static final int rows = 6;
+    static final int squares = rows * cols;
+    static final char empty = '.';
+
+    // moves are packed into a single int: from square, to square, promotion flag and captured piece
+    static final int noMove = 0;
+    static final int toShift = 5;
+    static final int squareMask = 0x1F;
+    static final int promotionFlag = 1 << 10;
+    static final int captureShift = 11;
+    static final int captureMask = 0x7F;  // captured piece letter, 0 when the move is not a capture
+    static final int squaresMask = squareMask | (squareMask << toShift);  // the from and to squares of a move
+    static final int maxMoves = 256;  // more than any position can have, the size of every move buffer
+    static final int moveLimit = 40;  // the game is a draw once both sides have made this many moves
+
+    private static final HashMap<Character, Integer> pieceValues = new HashMap<>();
+
+    // piece-square tables from white's point of view, row 0 is the rank white pawns promote on
+    private static final int[][] pieceSquareTables = new int[][]{
+            {  0,   0,   0,   0,   0,    // p
+              40,  45,  50,  45,  40,
+              20,  25,  30,  25,  20,
+               5,  10,  15,  10,   5,
+               0,   0,   0,   0,   0,
+               0,   0,   0,   0,   0},
+            {-20, -10, -10, -10, -20,    // n
+             -10,   5,  10,   5, -10,
+             -10,  10,  15,  10, -10,
+             -10,  10,  15,  10, -10,
+             -10,   5,  10,   5, -10,
+             -20, -10, -10, -10, -20},
+            {-10,  -5,  -5,  -5, -10,    // b
+              -5,   5,   5,   5,  -5,
+              -5,   5,  10,   5,  -5,
+              -5,   5,  10,   5,  -5,
+              -5,   5,   5,   5,  -5,
+             -10,  -5,  -5,  -5, -10},
+            {  5,  10,  10,  10,   5,    // r
+               0,   0,   0,   0,   0,
+               0,   0,   0,   0,   0,
+               0,   0,   0,   0,   0,
+               0,   0,   0,   0,   0,
+               0,   0,   5,   0,   0},
+            {-10,  -5,  -5,  -5, -10,    // q
+              -5,   0,   5,   0,  -5,
+              -5,   5,   5,   5,  -5,
+              -5,   5,   5,   5,  -5,
+              -5,   0,   5,   0,  -5,
+             -10,  -5,  -5,  -5, -10},
+            {-30, -30, -30, -30, -30,    // k
+             -20, -20, -20, -20, -20,
+             -10, -10, -10, -10, -10,
+               0,   0,   0,   0,   0,
+               5,   5,   0,   5,   5,
+              10,  10,   5,  10,  10}
+    };
+    private static final int[][] squareValues = new int[12][squares];  // material plus position, negative for black
+    static final int[] orderValues = new int[128];  // piece values by letter for MVV-LVA
+    private static final int[] attackerRanks = new int[128];  // 0 for the least valuable piece type
+
+    // Zobrist keys, generated from a fixed seed so hashes are stable between runs
+    static final String pieceLetters = "PNBRQKpnbrqk";
+    static final int[] pieceIndex = new int[128];
+    private static final long[][] zobristPieces = new long[pieceLetters.length()][squares];
+    private static final long zobristBlackToMove;
+    private static final long[] zobristMoveNumbers = new long[moveLimit + 1];
+
+    // direction offsets, first four are orthogonal and last four are diagonal
+    private static final int[] dirRow = new int[]{-1, 0, 1, 0, -1, -1, 1, 1};
+    private static final int[] dirCol = new int[]{0, 1, 0, -1, -1, 1, 1, -1};
+
+    // precomputed attack tables for the 5x6 board
+    private static final int[][] kingTargets = new int[squares][];
+    private static final int[][] knightTargets = new int[squares][];
+    private static final int[][][] rays = new int[squares][8][];  // squares in each direction up to the board edge
+    private static final int[][] pawnPushes = new int[2][squares];  // forward square for white (0) and black (1) pawns, -1 if none
+    private static final int[][][] pawnCaptures = new int[2][squares][];
+
+    static {
+        initializeAttackTables();
+        initializePieceValues();
+
+        Random zobristRandom = new Random(19410);
+        for(int i = 0; i < pieceLetters.length(); ++i){
+            pieceIndex[pieceLetters.charAt(i)] = i;
+            for(int sq = 0; sq < squares; ++sq)
+                zobristPieces[i][sq] = zobristRandom.nextLong();
+        }
+        zobristBlackToMove = zobristRandom.nextLong();
+        for(int i = 0; i <= moveLimit; ++i)
+            zobristMoveNumbers[i] = zobristRandom.nextLong();
+    }
+
+    private final char[] board = new char[squares];  // mailbox board indexed by row * cols + col
+    private char sideToMove;  // 'W' or 'B'
+    private int moveNum;  // full moves played, goes up after black has moved
+    private long hashKey;  // Zobrist key of the board and side to move, updated incrementally by makeMove and unmakeMove
+    private int evaluation;  // sum of squareValues over the board from white's side, kept by makeMove and unmakeMove
+    private int pieceCount;  // pieces on the board, kept with the evaluation so tablebase probes are cheap to gate
+    private boolean whiteKingAlive;
+    private boolean blackKingAlive;
+
+    // keys of the positions before every move made since setup, for finding repetitions
+    private long[] hashHistory = new long[2 * moveLimit + maxMoves];
+    private int[] reversibleHistory = new int[hashHistory.length];  // reversiblePlies before each move
+    private int historyCount;
+    private int reversiblePlies;  // plies since the last capture, pawn move or null move
+
+    /*
+       Sets up the given position, which is the move number and side on move on the first line followed by one
+       line per row using the piece letters and '.' for empty squares.
+     */
+    Position(String text) {
+        Scanner input = new Scanner(text);
+
+        moveNum = input.nextInt();
+        assert moveNum >= 0;
+
+        String curTurn = input.next();
+        if(!curTurn.isEmpty())
+            sideToMove = curTurn.charAt(0);
+        input.nextLine();
+        assert sideToMove == 'W' || sideToMove == 'B';
+
+        ArrayList<String> inputLines = new ArrayList<>();  // read in input lines into an array list
+
+        String lineRead;
+        while(input.hasNextLine()) {
+            lineRead = input.nextLine();
+            if(lineRead.isEmpty())  // one encounter empty line it is end of input, used for console input
+                break;
+            inputLines.add(lineRead);
+        }
+
+        assert inputLines.size() != 0 && inputLines.size() == rows;
+
+        char[] pieceArray;
+        for (int i = 0; i < inputLines.size(); ++i){
+            pieceArray = inputLines.get(i).toCharArray();
+            assert pieceArray.length == cols;
+            for (int j = 0; j < cols; ++j){
+                char curPos = pieceArray[j];
+                char validPc = Character.toLowerCase(curPos);
+                assert validPc == '.' || validPc == 'p' || validPc == 'k' || validPc == 'q' || validPc == 'b'
+                        || validPc == 'n' || validPc == 'r';
+
+                board[i * cols + j] = curPos;  // empty squares keep the '.' marker
+            }
+        }
+        hashKey = computeHash();
+        computeEvaluation();
+    }
+
+    Position(Position other) {
+        copyFrom(other);
+    }
+
+    void copyFrom(Position other){
+        System.arraycopy(other.board, 0, board, 0, squares);
+        sideToMove = other.sideToMove;
+        moveNum = other.moveNum;
+        hashKey = other.hashKey;
+        evaluation = other.evaluation;
+        pieceCount = other.pieceCount;
+        whiteKingAlive = other.whiteKingAlive;
+        blackKingAlive = other.blackKingAlive;
+        if(hashHistory.length < other.historyCount) {
+            hashHistory = new long[other.hashHistory.length];
+            reversibleHistory = new int[other.hashHistory.length];
+        }
+        System.arraycopy(other.hashHistory, 0, hashHistory, 0, other.historyCount);
+        System.arraycopy(other.reversibleHistory, 0, reversibleHistory, 0, other.historyCount);
+        historyCount = other.historyCount;
+        reversiblePlies = other.reversiblePlies;
+    }
+
+    /*
+       Sets up the board from an array of squares and a side to move without parsing text, keeping the move
+       number. Used by the tablebase generator, which visits millions of positions and cannot allocate for each.
+     */
+    void setBoard(char[] squares, char sideToMove){
+        System.arraycopy(squares, 0, board, 0, board.length);
+        this.sideToMove = sideToMove;
+        hashKey = computeHash();
+        computeEvaluation();
+        historyCount = 0;
+        reversiblePlies = 0;
+    }
+
+    /*
+       Writes the position in the format the constructor reads.
+     */
+    String toText(){
+        StringBuilder text = new StringBuilder();
+        text.append(moveNum).append(' ').append(sideToMove).append('\n');
+        for(int i = 0; i < rows; ++i)
+            text.append(board, i * cols, cols).append('\n');
+        return text.toString();
+    }
+
+    char sideToMove(){
+        return sideToMove;
+    }
+
+    boolean whiteToMove(){
+        return sideToMove == 'W';
+    }
+
+    int moveNumber(){
+        return moveNum;
+    }
+
+    long hashKey(){
+        return hashKey;
+    }
+
+    int pieceCount(){
+        return pieceCount;
+    }
+
+    /*
+       Key for the transposition table. Scores near the end of the game depend on how many moves are left before
+       it is drawn, so the move number is part of the key. The same position is normally reached at the same move
+       number anyway, so this costs hardly any transpositions.
+     */
+    long searchKey(){
+        return hashKey ^ zobristMoveNumbers[Math.min(moveNum, moveLimit)];
+    }
+
+    /*
+       Plies the side to move and its opponent may still play before the game is drawn by the move limit.
+     */
+    int pliesLeft(){
+        return 2 * (moveLimit - moveNum) - (sideToMove == 'B' ? 1 : 0);
+    }
+
+    /*
+       True when the position occurred before with the same side to move since the last capture, pawn move or
+       null move, the only moves that cannot be taken back by later ones.
+     */
+    boolean isRepetition(){
+        int oldest = Math.max(0, historyCount - reversiblePlies);
+        for(int i = historyCount - 2; i >= oldest; i -= 2){
+            if(hashHistory[i] == hashKey)
+                return true;
+        }
+        return false;
+    }
+
+    char pieceAt(int square){
+        return board[square];
+    }
+
+    /*
+       False once either king has been captured, which ends the game.
+     */
+    boolean kingsAlive(){
+        return whiteKingAlive && blackKingAlive;
+    }
+
+    /*
+       Static score of the position for the side to move.
+     */
+    int evaluate(){
+        return (sideToMove == 'W' ? evaluation : -evaluation);
+    }
+
+    private static void initializePieceValues(){
+        pieceValues.put('p', 100);
+        pieceValues.put('b', 300);
+        pieceValues.put('n', 300);
+        pieceValues.put('r', 500);
+        pieceValues.put('q', 900);
+        pieceValues.put('k', 10000000);
+        updatePieceValues();
+    }
+
+    /*
+       Derives the ordering values, attacker ranks and square values from the current piece values and tables.
+     */
+    private static void updatePieceValues(){
+        for(Map.Entry<Character, Integer> piece : pieceValues.entrySet()){
+            char letter = piece.getKey();
+            int rank = 0;
+            for(int value : pieceValues.values()){
+                if(value < piece.getValue())
+                    rank++;
+            }
+            orderValues[letter] = orderValues[Character.toUpperCase(letter)] = Math.min(piece.getValue(), 20000);
+            attackerRanks[letter] = attackerRanks[Character.toUpperCase(letter)] = rank;
+        }
+        initializeSquareValues();
+    }
+
+    /*
+       Combines piece values and piece-square tables into one signed table per piece letter so that the running
+       evaluation only needs one lookup per square a piece leaves or enters. Black uses the tables mirrored top to
+       bottom.
+     */
+    private static void initializeSquareValues(){
+        for(int i = 0; i < pieceLetters.length(); ++i){
+            char letter = pieceLetters.charAt(i);
+            boolean white = Character.isUpperCase(letter);
+            int type = "pnbrqk".indexOf(Character.toLowerCase(letter));
+            int value = pieceValues.get(Character.toLowerCase(letter));
+            for(int sq = 0; sq < squares; ++sq){
+                int tableSquare = (white ? sq : (rows - 1 - sq / cols) * cols + sq % cols);
+                int position = pieceSquareTables[type][tableSquare];
+                squareValues[i][sq] = (white ? value + position : -(value + position));
+            }
+        }
+    }
+
+    /*
+       Returns a copy of the piece values and piece-square tables in use.
+     */
+    static EvaluationWeights weights(){
+        EvaluationWeights weights = new EvaluationWeights();
+        for(int type = 0; type < EvaluationWeights.pieceTypes.length(); ++type){
+            weights.pieceValues[type] = pieceValues.get(EvaluationWeights.pieceTypes.charAt(type));
+            System.arraycopy(pieceSquareTables[type], 0, weights.tables[type], 0, squares);
+        }
+        return weights;
+    }
+
+    /*
+       Replaces the piece values and piece-square tables, with weights fitted by Tuner for example. Meant to be
+       called at startup, positions that already exist keep their running evaluation.
+     */
+    static void setWeights(EvaluationWeights weights){
+        for(int type = 0; type < EvaluationWeights.pieceTypes.length(); ++type){
+            pieceValues.put(EvaluationWeights.pieceTypes.charAt(type), weights.pieceValues[type]);
+            System.arraycopy(weights.tables[type], 0, pieceSquareTables[type], 0, squares);
+        }
+        updatePieceValues();
+    }
+
+    /*
+       This function fills in the attack tables once for every square so that move generation only has to walk
+       precomputed target lists instead of doing bounds checks on every step.
+     */
+    private static void initializeAttackTables(){
+        int[] knightRow = new int[]{-2, -1, 1, 2, 2, 1, -1, -2};
+        int[] knightCol = new int[]{1, 2, 2, 1, -1, -2, -2, -1};
+
+        for(int sq = 0; sq < squares; ++sq){
+            int row = sq / cols;
+            int col = sq % cols;
+
+            kingTargets[sq] = collectTargets(row, col, dirRow, dirCol);
+            knightTargets[sq] = collectTargets(row, col, knightRow, knightCol);
+
+            for(int d = 0; d < 8; ++d){
+                int length = 0;
+                int r = row + dirRow[d];
+                int c = col + dirCol[d];
+                int[] ray = new int[Math.max(rows, cols)];
+                while(onBoard(r, c)){
+                    ray[length++] = r * cols + c;
+                    r += dirRow[d];
+                    c += dirCol[d];
+                }
+                rays[sq][d] = Arrays.copyOf(ray, length);
+            }
+
+            for(int side = 0; side < 2; ++side){
+                int forward = (side == 0 ? -1 : 1);  // white pawns move up the board, black pawns down
+                pawnPushes[side][sq] = onBoard(row + forward, col) ? (row + forward) * cols + col : -1;
+                pawnCaptures[side][sq] = collectTargets(row, col, new int[]{forward, forward}, new int[]{-1, 1});
+            }
+        }
+    }
+
+    private static int[] collectTargets(int row, int col, int[] rowOffsets, int[] colOffsets){
+        int[] targets = new int[rowOffsets.length];
+        int length = 0;
+        for(int i = 0; i < rowOffsets.length; ++i){
+            if(onBoard(row + rowOffsets[i], col + colOffsets[i]))
+                targets[length++] = (row + rowOffsets[i]) * cols + col + colOffsets[i];
+        }
+        return Arrays.copyOf(targets, length);
+    }
+
+    private static boolean onBoard(int row, int col){
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /*
+       Computes the Zobrist key of the board from scratch. Only used when a board is set up, makeMove and
+       unmakeMove keep hashKey current.
+     */
+    private long computeHash(){
+        long key = (sideToMove == 'B' ? zobristBlackToMove : 0L);
+        for(int sq = 0; sq < squares; ++sq){
+            if(board[sq] != empty)
+                key ^= zobristPieces[pieceIndex[board[sq]]][sq];
+        }
+        return key;
+    }
+
+    /*
+       Computes the running evaluation and king flags from scratch. Only used when a board is set up, makeMove and
+       unmakeMove keep them current.
+     */
+    private void computeEvaluation(){
+        evaluation = 0;
+        pieceCount = 0;
+        whiteKingAlive = false;
+        blackKingAlive = false;
+        for(int sq = 0; sq < squares; ++sq){
+            if(board[sq] == empty)
+                continue;
+            evaluation += squareValues[pieceIndex[board[sq]]][sq];
+            ++pieceCount;
+            if(board[sq] == 'K')
+                whiteKingAlive = true;
+            else if(board[sq] == 'k')
+                blackKingAlive = true;
+        }
+    }
+
+    /*
+       The static score for the side to move computed by scanning the whole board, as a board setup does, rather
+       than read from the running evaluation. For benchmarking the evaluation itself.
+     */
+    int evaluateFromScratch(){
+        computeEvaluation();
+        return evaluate();
+    }
+
+    /*
+       Counts the leaf nodes of the move tree to the given depth. Positions where a king has been captured end the
+       game and count as leaves. Used to check that move generation and make/unmake agree with reference counts.
+     */
+    long perft(int depth){
+        return perft(depth, new int[Math.max(1, depth)][maxMoves], 0);
+    }
+
+    private long perft(int depth, int[][] moveStack, int ply){
+        if(depth == 0 || !whiteKingAlive || !blackKingAlive)
+            return 1;
+        int[] moves = moveStack[ply];
+        int moveCount = generateMoves(moves, false);
+        if(depth == 1)
+            return moveCount;
+        long count = 0;
+        for(int i = 0; i < moveCount; ++i){
+            int move = makeMove(moves[i]);
+            count += perft(depth - 1, moveStack, ply + 1);
+            unmakeMove(move);
+        }
+        return count;
+    }
+
+    int[] legalMoves(){
+        int[] moves = new int[maxMoves];
+        return Arrays.copyOf(moves, generateMoves(moves, false));
+    }
+
+    /*
+       This function will take a packed move giving the square to move from and the square to move to. This
+       function will modify the board directly, hand the move to the other side and return the move with its
+       promotion flag and captured piece filled in, which is all unmakeMove needs to restore the position.
+     */
+    int makeMove(int move){
+        int startLoc = moveFrom(move);
+        int endLoc = moveTo(move);
+        move = startLoc | (endLoc << toShift);
+        pushHistory();
+
+        char movedPiece = board[startLoc];
+        reversiblePlies = (movedPiece == 'P' || movedPiece == 'p' || board[endLoc] != empty ? 0 : reversiblePlies + 1);
+        int moved = pieceIndex[movedPiece];
+        hashKey ^= zobristPieces[moved][startLoc] ^ zobristBlackToMove;
+        evaluation -= squareValues[moved][startLoc];
+
+        char captured = board[endLoc];
+        if(captured != empty) {  // if the position to move to has an opponent piece save it for undo
+            move |= captured << captureShift;
+            hashKey ^= zobristPieces[pieceIndex[captured]][endLoc];
+            evaluation -= squareValues[pieceIndex[captured]][endLoc];
+            --pieceCount;
+            if(captured == 'K')
+                whiteKingAlive = false;
+            else if(captured == 'k')
+                blackKingAlive = false;
+        }
+
+        if((movedPiece == 'P' || movedPiece == 'p') && (endLoc < cols || endLoc >= squares - cols)) {
+            movedPiece = (movedPiece == 'P' ? 'Q' : 'q');
+            moved = pieceIndex[movedPiece];
+            move |= promotionFlag;
+        }
+        hashKey ^= zobristPieces[moved][endLoc];
+        evaluation += squareValues[moved][endLoc];
+        board[endLoc] = movedPiece;  // add the new position for on move side
+        board[startLoc] = empty;  // remove the old position for on move side
+        if(sideToMove == 'B')
+            moveNum++;
+        sideToMove = (sideToMove == 'W' ? 'B' : 'W');
+        return move;  // return move info
+    }
+
+    void unmakeMove(int move){
+        sideToMove = (sideToMove == 'W' ? 'B' : 'W');
+        if(sideToMove == 'B')
+            moveNum--;
+        reversiblePlies = reversibleHistory[--historyCount];
+        int startLoc = moveFrom(move);
+        int endLoc = moveTo(move);
+
+        char movedPiece = board[endLoc];
+        int moved = pieceIndex[movedPiece];
+        hashKey ^= zobristPieces[moved][endLoc] ^ zobristBlackToMove;
+        evaluation -= squareValues[moved][endLoc];
+
+        char captured = moveCaptured(move);
+        if(captured != 0) {
+            board[endLoc] = captured;
+            hashKey ^= zobristPieces[pieceIndex[captured]][endLoc];
+            evaluation += squareValues[pieceIndex[captured]][endLoc];
+            ++pieceCount;
+            if(captured == 'K')
+                whiteKingAlive = true;
+            else if(captured == 'k')
+                blackKingAlive = true;
+        }
+        else
+            board[endLoc] = empty;
+
+        if((move & promotionFlag) != 0) {
+            movedPiece = (movedPiece == 'Q' ? 'P' : 'p');
+            moved = pieceIndex[movedPiece];
+        }
+        board[startLoc] = movedPiece;
+        hashKey ^= zobristPieces[moved][startLoc];
+        evaluation += squareValues[moved][startLoc];
+    }
+
+    /*
+       Passes the move to the other side without moving a piece, for null-move pruning. The pass uses up a ply
+       like a move does, so the move number still counts towards the move limit.
+     */
+    void makeNullMove(){
+        pushHistory();
+        reversiblePlies = 0;  // no repetition across a pass, the position before it was not a real one
+        if(sideToMove == 'B')
+            moveNum++;
+        sideToMove = (sideToMove == 'W' ? 'B' : 'W');
+        hashKey ^= zobristBlackToMove;
+    }
+
+    void unmakeNullMove(){
+        sideToMove = (sideToMove == 'W' ? 'B' : 'W');
+        if(sideToMove == 'B')
+            moveNum--;
+        hashKey ^= zobristBlackToMove;
+        reversiblePlies = reversibleHistory[--historyCount];
+    }
+
+    private void pushHistory(){
+        if(historyCount == hashHistory.length) {
+            hashHistory = Arrays.copyOf(hashHistory, historyCount * 2);
+            reversibleHistory = Arrays.copyOf(reversibleHistory, historyCount * 2);
+        }
+        hashHistory[historyCount] = hashKey;
+        reversibleHistory[historyCount++] = reversiblePlies;
+    }
+
+    /*
+       Returns the position after the given move as text, without changing this one.
+     */
+    String textAfter(int move){
+        move = makeMove(move);
+        String text = toText();
+        unmakeMove(move);
+        return text;
+    }
+
+    /*
+       Static exchange evaluation of a capture: the material the side to move expects to win on the target square
+       if both sides keep recapturing with their least valuable attacker and may stop whenever that is better.
+     */
+    int staticExchange(int move){
+        int gain = captureGain(move);
+        move = makeMove(move);
+        int reply = exchangeOn(moveTo(move));
+        unmakeMove(move);
+        return gain - reply;
+    }
+
+    private int exchangeOn(int square){
+        int from = leastValuableAttacker(square, sideToMove == 'W');
+        if(from < 0)
+            return 0;
+        int move = makeMove(from | (square << toShift));
+        int val = captureGain(move) - exchangeOn(square);
+        unmakeMove(move);
+        return Math.max(0, val);  // the side to move can always decline to recapture
+    }
+
+    /*
+       Returns the square of the cheapest piece of the given side that can capture on the given square, or -1 if
+       there is none. Attacks are found by looking outward from the target square with the same tables used for
+       move generation.
+     */
+    private int leastValuableAttacker(int square, boolean white){
+        int side = (white ? 1 : 0);  // a pawn attacks the square from where an opposite pawn on it would capture
+        for(int from : pawnCaptures[side][square]){
+            if(board[from] == (white ? 'P' : 'p'))
+                return from;
+        }
+        for(int from : knightTargets[square]){
+            if(board[from] == (white ? 'N' : 'n'))
+                return from;
+        }
+        int best = -1;
+        int bestValue = Integer.MAX_VALUE;
+        for(int d = 0; d < 8; ++d){
+            for(int from : rays[square][d]){
+                char pc = board[from];
+                if(pc == empty)
+                    continue;
+                char type = Character.toLowerCase(pc);
+                boolean slides = type == 'q' || (type == 'r' && d < 4) || (type == 'b' && d >= 4);
+                if(Character.isUpperCase(pc) == white && slides && orderValues[pc] < bestValue) {
+                    best = from;
+                    bestValue = orderValues[pc];
+                }
+                break;
+            }
+        }
+        if(best >= 0)
+            return best;
+        for(int from : kingTargets[square]){
+            if(board[from] == (white ? 'K' : 'k'))
+                return from;
+        }
+        return -1;
+    }
+
+    static int captureGain(int move){
+        int gain = orderValues[moveCaptured(move)];
+        if((move & promotionFlag) != 0)
+            gain += orderValues['q'] - orderValues['p'];
+        return gain;
+    }
+
+    /*
+       MVV-LVA order of a capture or promotion: the victim's value first, the attacker's rank breaks ties.
+     */
+    int captureOrder(int move){
+        return captureGain(move) * 8 - attackerRanks[board[moveFrom(move)]];
+    }
+
+    /*
+       Index of the moving piece into tables kept per piece letter, such as the history table.
+     */
+    int movingPiece(int move){
+        return pieceIndex[board[moveFrom(move)]];
+    }
+
+    /*
+       Whether the side to move has anything besides its king and pawns. Passing the move is only trusted then,
+       because positions with nothing but pawns to push are often zugzwang.
+     */
+    boolean hasPiecesToMove(){
+        boolean white = (sideToMove == 'W');
+        for(int sq = 0; sq < squares; ++sq){
+            char pc = board[sq];
+            if(pc != empty && Character.isUpperCase(pc) == white && pc != 'P' && pc != 'p' && pc != 'K' && pc != 'k')
+                return true;
+        }
+        return false;
+    }
+
+    boolean kingAttacked(){
+        boolean white = (sideToMove == 'W');
+        char king = (white ? 'K' : 'k');
+        for(int sq = 0; sq < squares; ++sq){
+            if(board[sq] == king)
+                return leastValuableAttacker(sq, !white) >= 0;
+        }
+        return false;
+    }
+
+    static int moveFrom(int move){
+        return move & squareMask;
+    }
+
+    static int moveTo(int move){
+        return (move >>> toShift) & squareMask;
+    }
+
+    static char moveCaptured(int move){
+        return (char) ((move >>> captureShift) & captureMask);
+    }
+
+    static boolean isQuiet(int move){
+        return moveCaptured(move) == 0 && (move & promotionFlag) == 0;
+    }
+
+    static boolean sameSquares(int move, int other){
+        return (move & squaresMask) == (other & squaresMask);
+    }
+
+    static int decodeMove(String toDecode){
+        assert toDecode.length() == 5;
+        int[] decoder = new int[]{5, 4, 3, 2, 1, 0};
+        int from = decoder[Character.getNumericValue(toDecode.charAt(1)) - 1] * cols + (toDecode.charAt(0) - 'a');
+        int to = decoder[Character.getNumericValue(toDecode.charAt(4)) - 1] * cols + (toDecode.charAt(3) - 'a');
+        return from | (to << toShift);
+    }
+
+    static String encodeMove(int toEncode){
+        assert toEncode != noMove;
+        int[] intEncoder = new int[]{6, 5, 4, 3, 2, 1};
+        char[] charEncoder = new char[]{'a', 'b', 'c', 'd', 'e'};
+        StringBuilder encoded = new StringBuilder();
+        encoded.append(charEncoder[moveFrom(toEncode) % cols])
+                .append(intEncoder[moveFrom(toEncode) / cols])
+                .append('-')
+                .append(charEncoder[moveTo(toEncode) % cols])
+                .append(intEncoder[moveTo(toEncode) / cols]);
+        return encoded.toString();
+    }
+
+    /*
+       This function will generate all possible moves for the side that is on move into the given move buffer
+       and return how many were generated. Each move is packed into an int with its from and to squares, plus
+       the captured piece and promotion flag so that ordering code can inspect them without touching the board.
+       When capturesOnly is set only captures and promotions are generated, for the quiescence search.
+     */
+    int generateMoves(int[] moves, boolean capturesOnly){
+        int count = 0;
+        boolean whiteOnMove = (sideToMove == 'W');
+
+        for(int sq = 0; sq < squares; ++sq){  // for each piece of the side on move
+            char pc = board[sq];
+            if(pc == empty || Character.isUpperCase(pc) != whiteOnMove)
+                continue;
+            switch (Character.toLowerCase(pc)){
+                case 'k':
+                    count = addTargetMoves(moves, count, sq, kingTargets[sq], whiteOnMove, capturesOnly);
+                    break;
+                case 'q':
+                    for(int d = 0; d < 8; ++d)
+                        count = addSlidingMoves(moves, count, sq, rays[sq][d], whiteOnMove, capturesOnly);
+                    break;
+                case 'b':
+                    for(int d = 4; d < 8; ++d)
+                        count = addSlidingMoves(moves, count, sq, rays[sq][d], whiteOnMove, capturesOnly);
+                    for(int d = 0; d < 4 && !capturesOnly; ++d){  // bishops may also step one square orthogonally without capturing
+                        if(rays[sq][d].length > 0 && board[rays[sq][d][0]] == empty)
+                            moves[count++] = packMove(sq, rays[sq][d][0]);
+                    }
+                    break;
+                case 'r':
+                    for(int d = 0; d < 4; ++d)
+                        count = addSlidingMoves(moves, count, sq, rays[sq][d], whiteOnMove, capturesOnly);
+                    break;
+                case 'n':
+                    count = addTargetMoves(moves, count, sq, knightTargets[sq], whiteOnMove, capturesOnly);
+                    break;
+                case 'p':
+                    int side = (whiteOnMove ? 0 : 1);
+                    int push = pawnPushes[side][sq];
+                    if(push != -1 && board[push] == empty && (!capturesOnly || push < cols || push >= squares - cols))
+                        moves[count++] = packPawnMove(sq, push);
+                    for(int target : pawnCaptures[side][sq]){  // pawns only move diagonally when capturing
+                        if(board[target] != empty && Character.isUpperCase(board[target]) != whiteOnMove)
+                            moves[count++] = packPawnMove(sq, target);
+                    }
+                    break;
+            }
+        }
+        return count;  // return the number of moves
+    }
+
+    private int addTargetMoves(int[] moves, int count, int from, int[] targets, boolean whiteOnMove,
+                                    boolean capturesOnly){
+        for(int target : targets){
+            if(board[target] == empty ? !capturesOnly : Character.isUpperCase(board[target]) != whiteOnMove)
+                moves[count++] = packMove(from, target);
+        }
+        return count;
+    }
+
+    private int addSlidingMoves(int[] moves, int count, int from, int[] ray, boolean whiteOnMove,
+                                    boolean capturesOnly){
+        for(int target : ray){
+            if(board[target] != empty){
+                if(Character.isUpperCase(board[target]) != whiteOnMove)  // capture ends the slide
+                    moves[count++] = packMove(from, target);
+                break;
+            }
+            if(!capturesOnly)
+                moves[count++] = packMove(from, target);
+        }
+        return count;
+    }
+
+    private int packMove(int from, int to){
+        int move = from | (to << toShift);
+        if(board[to] != empty)
+            move |= board[to] << captureShift;
+        return move;
+    }
+
+    private int packPawnMove(int from, int to){
+        int move = packMove(from, to);
+        if(to < cols || to >= squares - cols)  // pawns reaching the last rank promote
+            move |= promotionFlag;
+        return move;
+    }
+}
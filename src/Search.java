@@ -0,0 +1,641 @@
+/*
+   Iterative deepening alpha-beta search over a Position. Every Search owns its position, move and score stacks,
+   killer and history tables and counters, so searches only meet in the transposition table they are given. The
+   engine runs one as its main search and more as Lazy SMP helpers, and the offline tools run as many independent
+   ones as they have threads.
+ */
+
+import java.util.*;
+
+public class Search {
+    static final int maxPly = 64;
+    static final int lossScore = -10000000;  // the side to move has no moves left
+    private static final int noMove = Position.noMove;
+    private static final int deltaMargin = 200;
+    private static final int infinity = Integer.MAX_VALUE;  // window bound, -infinity is still a valid int
+    private static final int aspirationWindow = 50;  // half width of the first root window around the last score
+    private static final int aspirationDepth = 4;  // iterations before this depth search with the full window
+
+    // selective search, each part can be switched off to measure what it is worth
+    private boolean useNullMove = true;
+    private boolean useLateMoveReductions = true;
+    private boolean useFutilityPruning = true;
+    private boolean useStaticExchange = true;  // skip captures that lose material in quiescence search
+    private static final int nullMoveReduction = 2;
+    private static final int nullMoveMinDepth = 3;
+    private static final int lateMoveIndex = 3;  // moves searched at full depth before reductions start
+    private static final int lateMoveMinDepth = 3;
+    private static final int[] futilityMargins = {0, 200, 500};  // by remaining depth, quiet moves are skipped
+    private static final int reverseFutilityMargin = 150;  // per ply of remaining depth
+    private static final int reverseFutilityMaxDepth = 3;
+    private static final int decisiveScore = 1000000;  // scores beyond this are king captures or tablebase results
+    private final boolean[] nullMovePlayed = new boolean[maxPly];
+
+    // preallocated move buffers, one per ply, so that the search does not allocate
+    private final int[][] moveStack = new int[maxPly][Position.maxMoves];
+    private final int[][] scoreStack = new int[maxPly][Position.maxMoves];  // ordering score of each move in moveStack
+    private final int[] pvMoves = new int[Position.maxMoves];  // for principalVariation, so moveStack[0] keeps its order
+
+    // move ordering: hash move, then captures by MVV-LVA, then killer moves, then quiet moves by history
+    private static final int hashMoveScore = 1 << 30;
+    private static final int captureScore = 1 << 28;
+    private static final int killerScore = 1 << 27;
+    private static final int historyMax = 1 << 26;
+    private final int[][] killers = new int[maxPly][2];
+    private final int[][] history = new int[Position.pieceLetters.length()][Position.squares];
+
+    private final Position position;
+    private final TranspositionTable transpositionTable;
+    private final Search owner;  // search whose stop flag this one polls, itself unless it is a helper
+    private volatile boolean stopRequested;
+    private volatile long deadline = Long.MAX_VALUE;  // System.nanoTime() value at which the search must stop
+    private long nodeLimit = Long.MAX_VALUE;
+    private Listener listener;
+    private boolean searchAborted;
+    private final SearchStats stats = new SearchStats();
+    private final Random random = new Random();
+    private boolean randomizeRoot = true;  // shuffle root moves of equal order for variety between games
+    private Tablebases tablebases;
+    private int[] tablebaseScratch = new int[0];
+
+    private int bestMove = noMove;  // best move of the last completed iteration
+    private int rootScore;  // its score for the side on move
+
+    /*
+       Hears about every completed iteration, on the searching thread and with the position at the root.
+     */
+    interface Listener {
+        void iterationFinished(Search search, int depth);
+    }
+
+    Search(Position position, TranspositionTable transpositionTable) {
+        this.position = position;
+        this.transpositionTable = transpositionTable;
+        this.owner = this;
+    }
+
+    /*
+       Creates a helper for the given search. The helper has its own copy of the position, stacks and random order
+       but shares the owner's transposition table, which is how results flow between threads, and stops when the
+       owner does.
+     */
+    Search(Search owner) {
+        this.position = new Position(owner.position);
+        this.transpositionTable = owner.transpositionTable;
+        this.owner = owner;
+        copySettings(owner);
+    }
+
+    /*
+       Takes over the switches, root randomization and tablebases of another search.
+     */
+    void copySettings(Search from){
+        useNullMove = from.useNullMove;
+        useLateMoveReductions = from.useLateMoveReductions;
+        useFutilityPruning = from.useFutilityPruning;
+        useStaticExchange = from.useStaticExchange;
+        randomizeRoot = from.randomizeRoot;
+        setTablebases(from.tablebases);
+    }
+
+    Position position(){
+        return position;
+    }
+
+    SearchStats stats(){
+        return stats;
+    }
+
+    int bestMove(){
+        return bestMove;
+    }
+
+    int rootScore(){
+        return rootScore;
+    }
+
+    /*
+       Sets when the search has to stop. May be moved from another thread while the search runs, when a ponder
+       search turns into a real one.
+     */
+    void setDeadline(long deadline){
+        this.deadline = deadline;
+    }
+
+    void setNodeLimit(long nodeLimit){
+        this.nodeLimit = nodeLimit;
+    }
+
+    void setListener(Listener listener){
+        this.listener = listener;
+    }
+
+    /*
+       Asks this search and its helpers to stop. Safe to call from any thread, the flag is polled every 1024 nodes.
+     */
+    void requestStop(){
+        stopRequested = true;
+    }
+
+    void clearStop(){
+        stopRequested = false;
+    }
+
+    boolean stopRequested(){
+        return stopRequested;
+    }
+
+    public void setRandomizeRoot(boolean randomizeRoot){
+        this.randomizeRoot = randomizeRoot;
+    }
+
+    public void setUseStaticExchange(boolean useStaticExchange){
+        this.useStaticExchange = useStaticExchange;
+    }
+
+    public void setUseNullMove(boolean useNullMove){
+        this.useNullMove = useNullMove;
+    }
+
+    public void setUseLateMoveReductions(boolean useLateMoveReductions){
+        this.useLateMoveReductions = useLateMoveReductions;
+    }
+
+    public void setUseFutilityPruning(boolean useFutilityPruning){
+        this.useFutilityPruning = useFutilityPruning;
+    }
+
+    /*
+       Gives the search solved endgame tables. Positions they cover are scored from the table instead of being
+       searched, except at the root where a move still has to be chosen.
+     */
+    public void setTablebases(Tablebases tablebases){
+        this.tablebases = tablebases;
+        tablebaseScratch = Tablebases.newScratch(tablebases == null ? 0 : Position.squares);
+    }
+
+    /*
+       Clears what a search learns about the game, for starting a new one.
+     */
+    void clearHistory(){
+        for(int[] pieceHistory : history)
+            Arrays.fill(pieceHistory, 0);
+    }
+
+    /*
+       Searches the position to exactly the given depth with no time limit and returns the number of nodes
+       visited. The move found is left in bestMove.
+     */
+    long searchToDepth(int depth){
+        deadline = Long.MAX_VALUE;
+        stopRequested = false;
+        transpositionTable.newSearch();
+        iterativeDeepening(System.nanoTime(), Long.MAX_VALUE, depth, 0);
+        return stats.nodes;
+    }
+
+    /*
+       Searches the position on its own for about the given time in nanoseconds and returns the depth of the last
+       completed iteration. The move found is left in bestMove.
+     */
+    int searchForTime(long budget){
+        long startTime = System.nanoTime();
+        deadline = startTime + budget;
+        stopRequested = false;
+        transpositionTable.newSearch();
+        return iterativeDeepening(startTime, budget, maxPly - 1, 0);
+    }
+
+    /*
+       Iterative deepening from the current position. Each iteration searches one ply deeper than the last and the
+       best move of the last fully completed iteration is kept in bestMove. Helpers start on alternating depths
+       and shuffle the root differently so that they do not all search the same nodes in lockstep. No iteration
+       goes deeper than the plies left before the move limit. Returns the depth of the last completed iteration.
+     */
+    int iterativeDeepening(long startTime, long budget, int maxDepth, int helperId){
+        searchAborted = false;
+        stats.reset();
+        bestMove = noMove;
+        clearOrderingTables();
+        int[] moves = moveStack[0];
+        int moveCount = position.generateMoves(moves, false);  // get list of moves
+        rootScore = (moveCount == 0 ? lossScore : position.evaluate());
+        if(randomizeRoot || helperId != 0)
+            shuffleMoves(moves, moveCount);
+        orderRootMoves(moves, moveCount);
+        int completedDepth = 0;
+        maxDepth = Math.min(maxDepth, Math.max(1, position.pliesLeft()));  // deeper lines all end in a draw
+        for(int depth = 1 + (helperId & 1); depth <= maxDepth && moveCount > 0; ++depth) {
+            int window = aspirationWindow;
+            int alpha = -infinity;
+            int beta = infinity;
+            if(depth >= aspirationDepth && completedDepth > 0) {  // expect a score close to the previous iteration's
+                alpha = (int) Math.max(-infinity, (long) rootScore - window);
+                beta = (int) Math.min(infinity, (long) rootScore + window);
+            }
+            int score;
+            while(true){
+                score = searchRoot(moves, moveCount, depth, alpha, beta);
+                if(searchAborted)
+                    break;
+                if(score <= alpha && alpha > -infinity)  // fail low, every move may be worse than expected
+                    alpha = (int) Math.max(-infinity, (long) score - window);
+                else if(score >= beta && beta < infinity)  // fail high, the best move is better than expected
+                    beta = (int) Math.min(infinity, (long) score + window);
+                else
+                    break;
+                stats.aspirationFails++;
+                window *= 4;
+            }
+            if(searchAborted)
+                break;
+            bestMove = moves[0];
+            rootScore = score;
+            completedDepth = depth;
+            stats.depth = depth;
+            if(listener != null)
+                listener.iterationFinished(this, depth);
+            if(System.nanoTime() - startTime >= budget / 2)  // the next iteration would not finish in time
+                break;
+        }
+        if(bestMove == noMove && moveCount > 0)  // not even the first iteration finished
+            bestMove = moves[0];
+        return completedDepth;
+    }
+
+    /*
+       Searches the root moves with a shared window and returns the best score. The first move gets the full window
+       and the others a null window around alpha, and only a move that beats alpha is searched again with the full
+       window. Whenever a move raises alpha it moves to the front, so after a completed search moves[0] is the best
+       move and the next iteration starts with it.
+     */
+    private int searchRoot(int[] moves, int moveCount, int depth, int alpha, int beta){
+        int bestValue = -infinity;
+        for(int i = 0; i < moveCount; ++i){
+            int move = position.makeMove(moves[i]);
+            int val;
+            if(i == 0)
+                val = -negamaxSearch(depth - 1, -beta, -alpha, 1);
+            else {
+                val = -negamaxSearch(depth - 1, -alpha - 1, -alpha, 1);
+                if(val > alpha && val < beta && !searchAborted) {
+                    stats.researches++;
+                    val = -negamaxSearch(depth - 1, -beta, -alpha, 1);
+                }
+            }
+            position.unmakeMove(move);
+            if(searchAborted)
+                return bestValue;
+            bestValue = Math.max(bestValue, val);
+            if(val > alpha) {
+                int best = moves[i];
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = best;
+                alpha = val;
+                if(alpha >= beta)
+                    break;
+            }
+        }
+        return bestValue;
+    }
+
+    /*
+       Principal variation search: the first move of a node is searched with the full window and the rest with a
+       null window that only proves they are no better than alpha. A move that beats alpha anyway is searched
+       again with the full window to get its exact score.
+
+       Outside the principal variation the search is selective. A node whose static score is far above beta, or
+       that stays above beta even after passing the move to the opponent, is cut off without searching its moves,
+       and near the leaves quiet moves that cannot bring the score up to alpha are skipped. Late quiet moves are
+       searched at reduced depth first in every node. None of this is done when the window is near king-capture
+       or tablebase scores, and the static score prunes nothing while the king on move is attacked. Positions the
+       move limit has drawn and repetitions of positions earlier on the path or in the game are scored as draws
+       without a search.
+     */
+    private int negamaxSearch(int depth, int alpha, int beta, int ply){
+        if(checkAborted())
+            return 0;
+
+        if(ply >= maxPly || !position.kingsAlive())
+            return position.evaluate();
+
+        if(ply > 0 && (position.pliesLeft() <= 0 || position.isRepetition()))  // drawn, or going round in circles
+            return 0;
+
+        if(ply > 0 && tablebases != null && position.pieceCount() <= tablebases.maxPieces()) {  // solved endgame, no search needed
+            int value = tablebases.probe(position, tablebaseScratch);
+            if(value >= 0 && value != Tablebases.illegal) {
+                stats.tablebaseHits++;
+                int distance = (value < Tablebases.lossBase ? value : value - Tablebases.lossBase);
+                return (distance > position.pliesLeft() ? 0 : Tablebases.score(value));  // the move limit comes first
+            }
+        }
+
+        if(depth <= 0)
+            return quiescenceSearch(alpha, beta, ply);
+
+        int alphaOrig = alpha;
+        long hashKey = position.searchKey();
+        long entry = transpositionTable.probe(hashKey);
+        int hashMove = TranspositionTable.entryMove(entry);
+        stats.tableProbes++;
+        if(TranspositionTable.entryBound(entry) != TranspositionTable.boundNone)
+            stats.tableHits++;
+        if(TranspositionTable.entryBound(entry) != TranspositionTable.boundNone
+                && TranspositionTable.entryDepth(entry) >= depth){  // reuse a result from an equal or deeper search
+            int score = TranspositionTable.entryScore(entry);
+            switch (TranspositionTable.entryBound(entry)){
+                case TranspositionTable.boundExact:
+                    return score;
+                case TranspositionTable.boundLower:
+                    alpha = Math.max(alpha, score);
+                    break;
+                case TranspositionTable.boundUpper:
+                    beta = Math.min(beta, score);
+                    break;
+            }
+            if(alpha >= beta)
+                return score;
+        }
+
+        boolean pvNode = (long) beta - alpha > 1;
+        boolean decisive = Math.abs(alpha) >= decisiveScore || Math.abs(beta) >= decisiveScore;
+        int staticScore = position.evaluate();
+        if(!pvNode && !decisive && useFutilityPruning && depth <= reverseFutilityMaxDepth
+                && staticScore - reverseFutilityMargin * depth >= beta
+                && !position.kingAttacked()) {  // too far ahead for the opponent to recover, unless our king hangs
+            stats.futilityPrunes++;
+            return staticScore - reverseFutilityMargin * depth;
+        }
+        if(!pvNode && !decisive && useNullMove && depth >= nullMoveMinDepth && !nullMovePlayed[ply - 1]
+                && staticScore >= beta && position.hasPiecesToMove() && !position.kingAttacked()) {
+            nullMovePlayed[ply] = true;  // pass the move, if that still holds beta a real move will too
+            position.makeNullMove();
+            int val = - negamaxSearch(depth-1-nullMoveReduction, -beta, -beta+1, ply+1);
+            position.unmakeNullMove();
+            nullMovePlayed[ply] = false;
+            if(searchAborted)
+                return 0;
+            if(val >= beta) {
+                stats.nullMoveCutoffs++;
+                return beta;
+            }
+        }
+
+        int[] moves = moveStack[ply];
+        int moveCount = position.generateMoves(moves, false);  // get list of moves
+
+        if(moveCount == 0) {  // if no moves left, signifies a loss for side on move
+            return lossScore;
+        }
+
+        int[] scores = scoreStack[ply];
+        scoreMoves(moves, scores, moveCount, hashMove, ply);
+        boolean futile = !pvNode && !decisive && useFutilityPruning && depth < futilityMargins.length
+                && staticScore + futilityMargins[depth] <= alpha && !position.kingAttacked();
+        int bestValue = Integer.MIN_VALUE;
+        int bestMove = noMove;
+        int val;
+        for(int i = 0; i < moveCount; ++i){
+            pickMove(moves, scores, i, moveCount);
+            boolean quiet = Position.isQuiet(moves[i]) && scores[i] < killerScore;  // not the hash move or a killer either
+            if(futile && quiet && i > 0) {
+                stats.futilityPrunes++;
+                bestValue = Math.max(bestValue, staticScore + futilityMargins[depth]);  // fail low at the bound
+                continue;
+            }
+            int reduction = 0;
+            if(useLateMoveReductions && !decisive && quiet && i >= lateMoveIndex && depth >= lateMoveMinDepth) {
+                reduction = (i >= 2 * lateMoveIndex && depth >= 2 * lateMoveMinDepth ? 2 : 1);
+                if(scores[i] >= historyMax / 4)  // moves that caused cutoffs elsewhere lose less depth
+                    reduction--;
+            }
+            int move = position.makeMove(moves[i]);  // execute move on the board, the other side is on move
+            if(i == 0)
+                val = - negamaxSearch(depth-1, -beta, -alpha, ply+1);  // negate the return value of the recursive call (negamax)
+            else {
+                val = - negamaxSearch(depth-1-reduction, -alpha-1, -alpha, ply+1);  // scout with a null window
+                if(reduction > 0 && val > alpha && !searchAborted) {  // the reduced search was not enough to refute it
+                    stats.reducedResearches++;
+                    val = - negamaxSearch(depth-1, -alpha-1, -alpha, ply+1);
+                }
+                if(val > alpha && val < beta && !searchAborted) {
+                    stats.researches++;
+                    val = - negamaxSearch(depth-1, -beta, -alpha, ply+1);
+                }
+            }
+            position.unmakeMove(move);
+            if(searchAborted)
+                return 0;
+            if(val > bestValue){
+                bestValue = val;
+                bestMove = move;
+            }
+            alpha = Math.max(alpha, val);
+            if(alpha >= beta) {
+                stats.betaCutoffs++;
+                if(i == 0)
+                    stats.firstMoveCutoffs++;
+                if(Position.isQuiet(move))
+                    rememberCutoff(move, depth, ply);
+                break;
+            }
+        }
+
+        int bound = TranspositionTable.boundExact;
+        if(bestValue <= alphaOrig)
+            bound = TranspositionTable.boundUpper;
+        else if(bestValue >= beta)
+            bound = TranspositionTable.boundLower;
+        transpositionTable.store(hashKey, depth, bound, bestValue, bestMove);
+
+        return bestValue;
+    }
+
+    /*
+       Searches only captures and promotions below the nominal depth so that leaves are never evaluated in the
+       middle of an exchange. The side to move may stand pat on the static evaluation, captures that cannot raise
+       the score to alpha even with a margin are skipped (delta pruning), and so are captures that lose material
+       according to the static exchange evaluation.
+     */
+    private int quiescenceSearch(int alpha, int beta, int ply){
+        if(checkAborted())
+            return 0;
+        stats.quiescenceNodes++;
+
+        if(position.pliesLeft() <= 0 && position.kingsAlive())  // the move limit ends the game before any capture
+            return 0;
+        int standPat = position.evaluate();
+        if(ply >= maxPly || !position.kingsAlive() || standPat >= beta)
+            return standPat;
+        if(standPat > alpha)
+            alpha = standPat;
+
+        int[] moves = moveStack[ply];
+        int[] scores = scoreStack[ply];
+        int moveCount = position.generateMoves(moves, true);
+        scoreMoves(moves, scores, moveCount, noMove, ply);
+        int bestValue = standPat;
+        for(int i = 0; i < moveCount; ++i){
+            pickMove(moves, scores, i, moveCount);
+            int move = moves[i];
+            boolean kingCapture = Character.toLowerCase(Position.moveCaptured(move)) == 'k';
+            if(!kingCapture && standPat + Position.captureGain(move) + deltaMargin <= alpha)
+                continue;
+            if(!kingCapture && useStaticExchange && position.staticExchange(move) < 0)
+                continue;
+
+            move = position.makeMove(move);
+            int val = - quiescenceSearch(-beta, -alpha, ply+1);
+            position.unmakeMove(move);
+            if(searchAborted)
+                return 0;
+            if(val > bestValue){
+                bestValue = val;
+                if(val > alpha)
+                    alpha = val;
+                if(alpha >= beta)
+                    break;
+            }
+        }
+        return bestValue;
+    }
+
+    /*
+       Counts a node and checks whether the search has to stop. The clock, node limit and the owner's stop flag
+       are only read every 1024 nodes.
+     */
+    private boolean checkAborted(){
+        if(!searchAborted && (++stats.nodes & 1023) == 0
+                && (owner.stopRequested || System.nanoTime() >= deadline || stats.nodes >= nodeLimit))
+            searchAborted = true;
+        return searchAborted;
+    }
+
+    /*
+       Rebuilds the principal variation by following the best moves stored in the transposition table from the
+       position after bestMove. Stops at the first missing or illegal move, the position is restored afterwards.
+     */
+    String principalVariation(int length){
+        StringBuilder pv = new StringBuilder();
+        int[] played = new int[Math.max(1, length)];
+        int count = 0;
+        int move = bestMove;
+        while(move != noMove && count < length && position.kingsAlive()){
+            int moveCount = position.generateMoves(pvMoves, false);
+            boolean legal = false;
+            for(int i = 0; i < moveCount && !legal; ++i)
+                legal = Position.sameSquares(pvMoves[i], move);
+            if(!legal)
+                break;
+            pv.append(Position.encodeMove(move)).append(' ');
+            played[count++] = position.makeMove(move);
+            long entry = transpositionTable.probe(position.searchKey());
+            move = (TranspositionTable.entryBound(entry) != TranspositionTable.boundNone
+                    ? TranspositionTable.entryMove(entry) : noMove);
+        }
+        while(count > 0)
+            position.unmakeMove(played[--count]);
+        return pv.toString().trim();
+    }
+
+    /*
+       Gives every move an ordering score. The score bands make up the stages of the move picker: the hash move
+       first, then captures and promotions by most valuable victim and least valuable attacker, then the two
+       killer moves of this ply, then the remaining quiet moves by their history score.
+     */
+    private void scoreMoves(int[] moves, int[] scores, int moveCount, int hashMove, int ply){
+        for(int i = 0; i < moveCount; ++i){
+            int move = moves[i];
+            if(hashMove != noMove && Position.sameSquares(move, hashMove))
+                scores[i] = hashMoveScore;
+            else if(!Position.isQuiet(move))
+                scores[i] = captureScore + position.captureOrder(move);
+            else if(move == killers[ply][0])
+                scores[i] = killerScore + 1;
+            else if(move == killers[ply][1])
+                scores[i] = killerScore;
+            else
+                scores[i] = history[position.movingPiece(move)][Position.moveTo(move)];
+        }
+    }
+
+    /*
+       Selects the best scored move among those not searched yet and swaps it into position index, so moves are
+       only sorted as far as the search actually gets before a cutoff.
+     */
+    private static void pickMove(int[] moves, int[] scores, int index, int moveCount){
+        int best = index;
+        for(int i = index + 1; i < moveCount; ++i){
+            if(scores[i] > scores[best])
+                best = i;
+        }
+        if(best != index) {
+            int temp = moves[index];
+            moves[index] = moves[best];
+            moves[best] = temp;
+            temp = scores[index];
+            scores[index] = scores[best];
+            scores[best] = temp;
+        }
+    }
+
+    /*
+       Orders the root moves with captures first. The sort is stable so that quiet moves keep the order they were
+       shuffled into.
+     */
+    private void orderRootMoves(int[] moves, int moveCount){
+        int[] scores = scoreStack[0];
+        for(int i = 0; i < moveCount; ++i)
+            scores[i] = Position.isQuiet(moves[i]) ? 0 : position.captureOrder(moves[i]) + 1;
+        for(int i = 1; i < moveCount; ++i){  // insertion sort by descending score
+            int move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while(j >= 0 && scores[j] < score){
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+    }
+
+    private void rememberCutoff(int move, int depth, int ply){
+        if(killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+        int[] pieceHistory = history[position.movingPiece(move)];
+        pieceHistory[Position.moveTo(move)] += depth * depth;
+        if(pieceHistory[Position.moveTo(move)] >= historyMax)
+            ageHistory();
+    }
+
+    /*
+       Killer moves only make sense within one search so they are cleared, while history is halved so that it
+       keeps some of what it learned on earlier moves of the game.
+     */
+    private void clearOrderingTables(){
+        for(int[] plyKillers : killers)
+            Arrays.fill(plyKillers, noMove);
+        ageHistory();
+    }
+
+    private void ageHistory(){
+        for(int[] pieceHistory : history){
+            for(int i = 0; i < pieceHistory.length; ++i)
+                pieceHistory[i] >>= 1;
+        }
+    }
+
+    private void shuffleMoves(int[] moves, int moveCount){
+        for(int i = moveCount - 1; i > 0; --i){  // Fisher-Yates shuffle in place
+            int j = random.nextInt(i + 1);
+            int temp = moves[i];
+            moves[i] = moves[j];
+            moves[j] = temp;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+   Counters for one search, kept as plain fields that the search thread increments directly so they are cheap
+   enough to leave on. Helper threads keep their own and the owner adds them up once the search is over. The
+   summary of every move is printed as a single key=value log line and committed as a JFR event.
+ */
+public class SearchStats {
+    long nodes;  // every node visited, including quiescence nodes
+    long quiescenceNodes;
+    long betaCutoffs;
+    long firstMoveCutoffs;  // cutoffs caused by the first move searched at a node
+    long researches;  // null-window scouts that beat alpha and were searched again
+    long aspirationFails;  // root windows the score fell outside of
+    long nullMoveCutoffs;
+    long reducedResearches;  // reduced late moves that beat alpha and were searched again at full depth
+    long futilityPrunes;  // nodes cut by reverse futility plus moves skipped by futility pruning
+    long tableProbes;
+    long tableHits;
+    long tablebaseHits;  // nodes scored from an endgame table
+    int depth;
+    long timeUsed;  // nanoseconds
+    String principalVariation = "";
+
+    public void reset(){
+        nodes = 0;
+        quiescenceNodes = 0;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        researches = 0;
+        aspirationFails = 0;
+        nullMoveCutoffs = 0;
+        reducedResearches = 0;
+        futilityPrunes = 0;
+        tableProbes = 0;
+        tableHits = 0;
+        tablebaseHits = 0;
+        depth = 0;
+        timeUsed = 0;
+        principalVariation = "";
+    }
+
+    public void add(SearchStats other){
+        nodes += other.nodes;
+        quiescenceNodes += other.quiescenceNodes;
+        betaCutoffs += other.betaCutoffs;
+        firstMoveCutoffs += other.firstMoveCutoffs;
+        researches += other.researches;
+        aspirationFails += other.aspirationFails;
+        nullMoveCutoffs += other.nullMoveCutoffs;
+        reducedResearches += other.reducedResearches;
+        futilityPrunes += other.futilityPrunes;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+        tablebaseHits += other.tablebaseHits;
+    }
+
+    public long nodesPerSecond(){
+        return nodes * 1000000000L / Math.max(1, timeUsed);
+    }
+
+    public String toLogLine(int moveNum, int score){
+        return String.format("search move=%d depth=%d score=%d nodes=%d qnodes=%d nps=%d time_ms=%d cutoffs=%d "
+                        + "first_move_cutoff_pct=%.1f researches=%d aspiration_fails=%d null_cutoffs=%d "
+                        + "lmr_researches=%d futility_prunes=%d tt_probes=%d tt_hits=%d tt_hit_pct=%.1f tb_hits=%d pv=%s",
+                moveNum, depth, score, nodes, quiescenceNodes, nodesPerSecond(), timeUsed / 1000000, betaCutoffs,
+                percent(firstMoveCutoffs, betaCutoffs), researches, aspirationFails, nullMoveCutoffs,
+                reducedResearches, futilityPrunes, tableProbes, tableHits,
+                percent(tableHits, tableProbes), tablebaseHits,
+                principalVariation.isEmpty() ? "-" : principalVariation.replace(' ', ','));
+    }
+
+    public void commitEvent(int moveNum, int score){
+        SearchEvent event = new SearchEvent();
+        if(!event.isEnabled())
+            return;
+        event.moveNum = moveNum;
+        event.depth = depth;
+        event.score = score;
+        event.nodes = nodes;
+        event.quiescenceNodes = quiescenceNodes;
+        event.nodesPerSecond = nodesPerSecond();
+        event.betaCutoffs = betaCutoffs;
+        event.firstMoveCutoffs = firstMoveCutoffs;
+        event.researches = researches;
+        event.aspirationFails = aspirationFails;
+        event.nullMoveCutoffs = nullMoveCutoffs;
+        event.reducedResearches = reducedResearches;
+        event.futilityPrunes = futilityPrunes;
+        event.tableProbes = tableProbes;
+        event.tableHits = tableHits;
+        event.tablebaseHits = tablebaseHits;
+        event.timeUsed = timeUsed / 1000000;
+        event.principalVariation = principalVariation;
+        event.commit();
+    }
+
+    private static double percent(long part, long whole){
+        return (whole == 0 ? 0.0 : 100.0 * part / whole);
+    }
+
+    /*
+       JFR event recorded once per move, enable it with -XX:StartFlightRecording or jcmd JFR.start to scrape the
+       search counters from a running engine.
+     */
+    @jdk.jfr.Name("minichess.Search")
+    @jdk.jfr.Label("MiniChess Search")
+    @jdk.jfr.Category("MiniChess")
+    static class SearchEvent extends jdk.jfr.Event {
+        @jdk.jfr.Label("Move Number") int moveNum;
+        @jdk.jfr.Label("Depth") int depth;
+        @jdk.jfr.Label("Score") int score;
+        @jdk.jfr.Label("Nodes") long nodes;
+        @jdk.jfr.Label("Quiescence Nodes") long quiescenceNodes;
+        @jdk.jfr.Label("Nodes Per Second") long nodesPerSecond;
+        @jdk.jfr.Label("Beta Cutoffs") long betaCutoffs;
+        @jdk.jfr.Label("First Move Cutoffs") long firstMoveCutoffs;
+        @jdk.jfr.Label("Re-searches") long researches;
+        @jdk.jfr.Label("Aspiration Fails") long aspirationFails;
+        @jdk.jfr.Label("Null Move Cutoffs") long nullMoveCutoffs;
+        @jdk.jfr.Label("Reduced Re-searches") long reducedResearches;
+        @jdk.jfr.Label("Futility Prunes") long futilityPrunes;
+        @jdk.jfr.Label("TT Probes") long tableProbes;
+        @jdk.jfr.Label("TT Hits") long tableHits;
+        @jdk.jfr.Label("Tablebase Hits") long tablebaseHits;
+        @jdk.jfr.Label("Time Used") @jdk.jfr.Timespan(jdk.jfr.Timespan.MILLISECONDS) long timeUsed;
+        @jdk.jfr.Label("Principal Variation") String principalVariation;
+    }
+}
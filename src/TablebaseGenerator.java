@@ -0,0 +1,289 @@
+/*
+   Builds the endgame tables read by Tablebases with retrograde analysis. Tables for the signatures reached by a
+   capture, a promotion or both at once are generated first, so every move out of a table lands either in the same table
+   or in a finished one. Each signature is then solved in passes over all its positions: pass k marks a win in k plies
+   where some move reaches a loss in k - 1, and a loss in k where every move reaches a win of at most k - 1. Every pass
+   is split between worker threads, each with its own position for move generation. Positions still unresolved are draws
+   once a pass changes nothing and the passes are past the longest distance in the tables a capture or promotion leads
+   to, since a move into those can still resolve a position one pass after its distance. Distances ignore the move limit
+   of a real game.
+
+   Usage: java TablebaseGenerator <directory> <signature>... [--threads n]
+     signature   pieces on the board, white upper case and black lower case, e.g. KQk or KRkp
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class TablebaseGenerator {
+    private static final int maxGeneratedPieces = 5;  // 30^5 * 2 positions, about 49MB per table
+    private static final int chunksPerThread = 16;
+    private static final int cols = 5;
+
+    private final Path directory;
+    private final int threads;
+    private final Tablebases tablebases;  // every finished table plus the one being solved
+    private ExecutorService pool;
+    private ThreadLocal<Worker> workers;
+
+    /*
+       Per-thread state: a position used for move generation and probing, a move buffer and probe scratch.
+     */
+    private static class Worker {
+        final Position position = new Position(MiniChess.defaultBoard);
+        final int[] moves = new int[Position.maxMoves];
+        final char[] board = new char[Tablebases.squares];
+        final int[] scratch = Tablebases.newScratch(Tablebases.squares);
+    }
+
+    TablebaseGenerator(Path directory, int threads) throws IOException {
+        this.directory = directory;
+        this.threads = threads;
+        Files.createDirectories(directory);
+        tablebases = Tablebases.load(directory);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ArrayList<String> signatures = new ArrayList<>();
+        for(int i = 1; i < args.length; ++i){
+            if(args[i].equals("--threads") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else
+                signatures.add(args[i]);
+        }
+        if(args.length < 2 || signatures.isEmpty()) {
+            System.out.println("usage: java TablebaseGenerator <directory> <signature>... [--threads n]");
+            return;
+        }
+        for(String signature : signatures){
+            if(!validSignature(signature)) {
+                System.out.println("bad signature " + signature + ": one K, one k and at most "
+                        + maxGeneratedPieces + " pieces from " + Tablebases.pieceOrder);
+                return;
+            }
+        }
+
+        TablebaseGenerator generator = new TablebaseGenerator(Paths.get(args[0]), Math.max(1, threads));
+        generator.pool = Executors.newFixedThreadPool(generator.threads);
+        generator.workers = ThreadLocal.withInitial(Worker::new);
+        try {
+            for(String signature : signatures)
+                generator.generate(Tablebases.canonicalSignature(signature));
+        } finally {
+            generator.pool.shutdown();
+        }
+    }
+
+    static boolean validSignature(String signature){
+        if(signature.length() > maxGeneratedPieces)
+            return false;
+        int whiteKings = 0;
+        int blackKings = 0;
+        for(char pc : signature.toCharArray()){
+            if(Tablebases.pieceOrder.indexOf(pc) < 0)
+                return false;
+            whiteKings += (pc == 'K' ? 1 : 0);
+            blackKings += (pc == 'k' ? 1 : 0);
+        }
+        return whiteKings == 1 && blackKings == 1;
+    }
+
+    /*
+       Generates the table for a signature after the tables it depends on. Tables already in the directory are
+       reused.
+     */
+    private void generate(String signature) throws IOException, InterruptedException, ExecutionException {
+        if(tablebases.contains(signature))
+            return;
+        for(String successor : successors(signature))
+            generate(successor);
+        solve(signature);
+    }
+
+    /*
+       The signatures a capture, a promotion or a pawn capturing onto the last rank leads to from this one.
+     */
+    private static List<String> successors(String signature){
+        List<String> successors = new ArrayList<>();
+        for(int i = 0; i < signature.length(); ++i){
+            char pc = signature.charAt(i);
+            if(Character.toLowerCase(pc) != 'k')  // a capture removes the piece
+                successors.add(Tablebases.canonicalSignature(signature.substring(0, i) + signature.substring(i + 1)));
+            if(Character.toLowerCase(pc) != 'p')
+                continue;
+            char[] promoted = signature.toCharArray();  // a promotion turns it into a queen
+            promoted[i] = (pc == 'P' ? 'Q' : 'q');
+            successors.add(Tablebases.canonicalSignature(new String(promoted)));
+            for(int j = 0; j < promoted.length; ++j){  // and may capture a piece of the other side on the way
+                char captured = signature.charAt(j);
+                boolean opponent = Character.isUpperCase(captured) != Character.isUpperCase(pc);
+                if(opponent && Character.toLowerCase(captured) != 'k')
+                    successors.add(Tablebases.canonicalSignature(new String(promoted, 0, j)
+                            + new String(promoted, j + 1, promoted.length - j - 1)));
+            }
+        }
+        return successors;
+    }
+
+    /*
+       The longest win or loss stored in the tables the captures and promotions out of this signature lead to.
+     */
+    private int longestSuccessorDistance(String signature){
+        int longest = 0;
+        for(String successor : successors(signature)){
+            ByteBuffer values = tablebases.table(successor).values;
+            for(int index = 0; index < values.limit(); ++index){
+                int v = values.get(index) & 0xFF;
+                if(v != Tablebases.illegal && v != Tablebases.draw)
+                    longest = Math.max(longest, v < Tablebases.lossBase ? v : v - Tablebases.lossBase);
+            }
+        }
+        return longest;
+    }
+
+    private void solve(String signature) throws IOException, InterruptedException, ExecutionException {
+        long startTime = System.nanoTime();
+        byte[] values = new byte[Tablebases.positionCount(signature.length())];
+        tablebases.add(signature, ByteBuffer.wrap(values));  // moves within the signature probe the values being filled
+        Tablebases.Table table = tablebases.table(signature);
+
+        runPass(values, (worker, index) -> initialValue(worker, table, index));
+        int lastSuccessorPass = longestSuccessorDistance(signature) + 1;
+        int distance = 0;
+        for(int pass = 1; pass <= Tablebases.maxDistance; ++pass){
+            int k = pass;
+            long changed = runPass(values, (worker, index) -> (values[index] == Tablebases.draw
+                    ? passValue(worker, table, index, k) : values[index]));
+            if(changed > 0)
+                distance = pass;
+            else if(pass >= lastSuccessorPass)
+                break;
+        }
+
+        write(signature, values);
+        long[] counts = new long[3];  // wins, losses, draws
+        for(byte value : values){
+            int v = value & 0xFF;
+            if(v != Tablebases.illegal)
+                ++counts[v == Tablebases.draw ? 2 : (v < Tablebases.lossBase ? 0 : 1)];
+        }
+        System.out.println("tablebase " + signature + " file=" + Tablebases.fileName(signature) + " wins=" + counts[0]
+                + " losses=" + counts[1] + " draws=" + counts[2] + " longest=" + distance + " time_ms="
+                + (System.nanoTime() - startTime) / 1000000);
+    }
+
+    private interface PositionRule {
+        int value(Worker worker, int index);
+    }
+
+    /*
+       Applies the rule to every position, split into chunks on the pool, and returns how many values it changed.
+       Waiting for all chunks also publishes this pass's values to the next one.
+     */
+    private long runPass(byte[] values, PositionRule rule) throws InterruptedException, ExecutionException {
+        int chunk = Math.max(1, values.length / (threads * chunksPerThread));
+        ArrayList<Future<Long>> results = new ArrayList<>();
+        for(int start = 0; start < values.length; start += chunk){
+            int first = start;
+            int last = Math.min(values.length, start + chunk);
+            results.add(pool.submit(() -> {
+                Worker worker = workers.get();
+                long changed = 0;
+                for(int index = first; index < last; ++index){
+                    byte value = (byte) rule.value(worker, index);
+                    if(value != values[index]) {
+                        values[index] = value;
+                        ++changed;
+                    }
+                }
+                return changed;
+            }));
+        }
+        long changed = 0;
+        for(Future<Long> result : results)
+            changed += result.get();
+        return changed;
+    }
+
+    /*
+       Marks indices that are not positions as illegal and positions without moves as lost, everything else
+       starts as unresolved.
+     */
+    private int initialValue(Worker worker, Tablebases.Table table, int index){
+        if(!decode(table, index, worker.board))
+            return Tablebases.illegal;
+        worker.position.setBoard(worker.board, (index & 1) == 0 ? 'W' : 'B');
+        return (worker.position.generateMoves(worker.moves, false) == 0 ? Tablebases.lossBase : Tablebases.draw);
+    }
+
+    /*
+       Value of an unresolved position in pass k, or draw if it is still unresolved. Capturing the king counts as
+       reaching a position lost in 0.
+     */
+    private int passValue(Worker worker, Tablebases.Table table, int index, int k){
+        decode(table, index, worker.board);
+        Position position = worker.position;
+        position.setBoard(worker.board, (index & 1) == 0 ? 'W' : 'B');
+        int moveCount = position.generateMoves(worker.moves, false);
+        boolean allWins = true;
+        int longestWin = 0;
+        for(int i = 0; i < moveCount; ++i){
+            int move = position.makeMove(worker.moves[i]);
+            int child = (Character.toLowerCase(Position.moveCaptured(move)) == 'k'
+                    ? Tablebases.lossBase : tablebases.probe(position, worker.scratch));
+            position.unmakeMove(move);
+            if(child < 0)
+                throw new IllegalStateException("no table for a successor of " + table.signature);
+            if(child == Tablebases.lossBase + k - 1)
+                return k;
+            if(child == Tablebases.draw || child >= Tablebases.lossBase)
+                allWins = false;
+            else
+                longestWin = Math.max(longestWin, child);
+        }
+        return (allWins && longestWin == k - 1 ? Tablebases.lossBase + k : Tablebases.draw);
+    }
+
+    /*
+       Fills the board for a table index and reports whether it is a position: no two pieces on one square,
+       identical pieces in ascending square order so each position has one index, and no pawn on either back rank.
+     */
+    private static boolean decode(Tablebases.Table table, int index, char[] board){
+        Arrays.fill(board, '.');
+        int rest = index >>> 1;
+        int previous = Tablebases.squares;  // square of the next slot up, slots are decoded from the last one
+        char previousPiece = 0;
+        boolean valid = true;
+        for(int slot = table.pieces - 1; slot >= 0; --slot){
+            int sq = rest % Tablebases.squares;
+            rest /= Tablebases.squares;
+            char pc = table.signature.charAt(slot);  // the canonical signature lists the pieces in slot order
+            if(board[sq] != '.' || (pc == previousPiece && sq >= previous))
+                valid = false;
+            if((pc == 'P' || pc == 'p') && (sq < cols || sq >= Tablebases.squares - cols))
+                valid = false;
+            board[sq] = pc;
+            previous = sq;
+            previousPiece = pc;
+        }
+        return valid;
+    }
+
+    private void write(String signature, byte[] values) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Tablebases.headerBytes);
+        header.order(ByteOrder.BIG_ENDIAN);
+        header.putInt(Tablebases.magic).putInt(Tablebases.version).putInt(values.length);
+        header.flip();
+        ByteBuffer body = ByteBuffer.wrap(values);
+        try (FileChannel channel = FileChannel.open(directory.resolve(Tablebases.fileName(signature)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(header.hasRemaining() || body.hasRemaining())
+                channel.write(new ByteBuffer[]{header, body});
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+   Endgame tables for small material signatures, written by TablebaseGenerator and probed by the search. Every table
+   holds one byte per position of its signature: 0 is a draw, 1 to 127 is a win for the side to move in that many
+   plies, 128 plus n is a loss in n plies and 255 marks an index that is not a valid position.
+
+   A position is indexed by the squares of its pieces, in the order "KQRBNPkqrbnp" with identical pieces taken in
+   ascending square order, followed by the side to move. Tables are memory-mapped from files named after their
+   signature with the white and black pieces split by 'v', for example "KQvK.mtb".
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+public class Tablebases {
+    static final String pieceOrder = "KQRBNPkqrbnp";
+    private static final int[] letterIndex = new int[128];
+    static final int magic = 0x4D435442;  // "MCTB"
+    static final int version = 1;
+    static final int headerBytes = 12;  // magic, version, position count
+    static final int squares = 30;
+
+    static final int draw = 0;
+    static final int lossBase = 128;
+    static final int illegal = 255;
+    static final int maxDistance = 126;
+    static final int winScore = 5000000;  // below a king capture, above any material score
+
+    /*
+       One solved signature. The values buffer is either a mapped file or, while a table is being generated, a heap
+       buffer wrapping the generator's array.
+     */
+    static class Table {
+        final String signature;
+        final long code;
+        final int[] firstSlot = new int[pieceOrder.length()];  // first square slot of each piece letter
+        final int pieces;
+        final ByteBuffer values;
+
+        Table(String signature, ByteBuffer values) {
+            this.signature = signature;
+            this.code = materialCode(signature);
+            this.pieces = signature.length();
+            this.values = values;
+            int slot = 0;
+            for(int i = 0; i < pieceOrder.length(); ++i){
+                firstSlot[i] = slot;
+                slot += (int) ((code >>> (4 * i)) & 0xF);
+            }
+        }
+    }
+
+    static {
+        for(int i = 0; i < pieceOrder.length(); ++i)
+            letterIndex[pieceOrder.charAt(i)] = i;
+    }
+
+    private volatile Table[] tables = new Table[0];
+    private volatile int maxPieces = 0;
+
+    /*
+       Maps every table file in the given directory.
+     */
+    public static Tablebases load(Path directory) throws IOException {
+        Tablebases tablebases = new Tablebases();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.mtb")) {
+            for(Path file : files){
+                String name = file.getFileName().toString();
+                String signature = signatureFromFileName(name.substring(0, name.length() - 4));
+                tablebases.add(signature, map(file, signature));
+            }
+        }
+        return tablebases;
+    }
+
+    private static ByteBuffer map(Path file, String signature) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if(buffer.limit() < headerBytes || buffer.getInt(0) != magic || buffer.getInt(4) != version
+                || buffer.getInt(8) != positionCount(signature.length())
+                || buffer.limit() != headerBytes + positionCount(signature.length()))
+            throw new IOException("not a tablebase for " + signature + ": " + file);
+        buffer.position(headerBytes);
+        return buffer.slice();
+    }
+
+    synchronized void add(String signature, ByteBuffer values){
+        Table[] grown = Arrays.copyOf(tables, tables.length + 1);
+        grown[tables.length] = new Table(canonicalSignature(signature), values);
+        tables = grown;
+        maxPieces = Math.max(maxPieces, signature.length());
+    }
+
+    boolean contains(String signature){
+        return findTable(materialCode(signature)) != null;
+    }
+
+    Table table(String signature){
+        return findTable(materialCode(signature));
+    }
+
+    public int maxPieces(){
+        return maxPieces;
+    }
+
+    /*
+       Returns the stored value of the position, or -1 when no table covers its material. The scratch array must
+       come from newScratch and belong to the calling thread, so probing allocates nothing.
+     */
+    public int probe(Position position, int[] scratch){
+        long code = 0;
+        for(int sq = 0; sq < squares; ++sq){
+            char pc = position.pieceAt(sq);
+            if(pc != '.')
+                code += 1L << (4 * letterIndex[pc]);
+        }
+        Table table = findTable(code);
+        if(table == null)
+            return -1;
+        return table.values.get(positionIndex(table, position, scratch)) & 0xFF;
+    }
+
+    static int[] newScratch(int pieces){
+        return new int[pieceOrder.length() + pieces];
+    }
+
+    private Table findTable(long code){
+        for(Table table : tables){
+            if(table.code == code)
+                return table;
+        }
+        return null;
+    }
+
+    /*
+       Index of the position in its table. Pieces are visited in ascending square order, so identical pieces are
+       always numbered in ascending square order too. The scratch array counts the pieces of each letter seen so
+       far in its first entries and collects the square of every slot after them.
+     */
+    static int positionIndex(Table table, Position position, int[] scratch){
+        int letters = pieceOrder.length();
+        Arrays.fill(scratch, 0, letters, 0);
+        for(int sq = 0; sq < squares; ++sq){
+            char pc = position.pieceAt(sq);
+            if(pc == '.')
+                continue;
+            int letter = letterIndex[pc];
+            scratch[letters + table.firstSlot[letter] + scratch[letter]++] = sq;
+        }
+        int index = 0;
+        for(int slot = 0; slot < table.pieces; ++slot)
+            index = index * squares + scratch[letters + slot];
+        return index * 2 + (position.whiteToMove() ? 0 : 1);
+    }
+
+    /*
+       Converts a stored value to a search score for the side to move. Wins found sooner score higher.
+     */
+    static int score(int value){
+        if(value == draw || value == illegal)
+            return 0;
+        if(value < lossBase)
+            return winScore - value;
+        return -(winScore - (value - lossBase));
+    }
+
+    static int positionCount(int pieces){
+        int count = 2;
+        for(int i = 0; i < pieces; ++i)
+            count *= squares;
+        return count;
+    }
+
+    static long materialCode(String signature){
+        long code = 0;
+        for(char pc : signature.toCharArray())
+            code += 1L << (4 * pieceOrder.indexOf(pc));
+        return code;
+    }
+
+    /*
+       Sorts the letters of a signature into pieceOrder, so "kKQ" and "KQk" name the same table.
+     */
+    static String canonicalSignature(String signature){
+        StringBuilder canonical = new StringBuilder();
+        for(char pc : pieceOrder.toCharArray()){
+            for(char other : signature.toCharArray()){
+                if(other == pc)
+                    canonical.append(pc);
+            }
+        }
+        return canonical.toString();
+    }
+
+    /*
+       File names spell black's pieces in upper case after a 'v' so that names differ on case-insensitive file
+       systems, e.g. "KQk" is stored as "KQvK".
+     */
+    static String fileName(String signature){
+        StringBuilder name = new StringBuilder();
+        for(char pc : signature.toCharArray()){
+            if(Character.isLowerCase(pc) && name.indexOf("v") < 0)
+                name.append('v');
+            name.append(Character.toUpperCase(pc));
+        }
+        return name.append(".mtb").toString();
+    }
+
+    static String signatureFromFileName(String name){
+        int split = name.indexOf('v');
+        return canonicalSignature(name.substring(0, split) + name.substring(split + 1).toLowerCase());
+    }
+}
@@ -0,0 +1,32 @@
+/*
+   Budgets thinking time per move from the remaining game clock. All times are in nanoseconds. The remaining time
+   is tracked locally by subtracting the time each move used, and can be corrected from an outside clock.
+ */
+public class TimeManager {
+    private static final long safetyMargin = 200000000L;  // kept in reserve for network latency
+    private long remaining;
+    private final long maxPerMove;
+
+    TimeManager(long gameTime, long maxPerMove) {
+        this.remaining = gameTime;
+        this.maxPerMove = maxPerMove;
+    }
+
+    /*
+       Returns how long the next move may take given how many of our moves are left before the game ends. The
+       clock is split evenly over the remaining moves and capped at the per-move limit.
+     */
+    public long budget(int movesLeft){
+        long usable = Math.max(0, remaining - safetyMargin);
+        long budget = usable / Math.max(1, movesLeft);
+        return Math.max(1000000L, Math.min(budget, maxPerMove));
+    }
+
+    public void moveFinished(long timeUsed){
+        remaining -= timeUsed;
+    }
+
+    public void setRemaining(long remaining){
+        this.remaining = remaining;
+    }
+}
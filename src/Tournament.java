@@ -0,0 +1,338 @@
+/*
+   Offline self-play between two engine configurations, so a change can be shown to make the engine stronger and
+   not only faster. Games start from short random openings, each played twice with the colors swapped, and run on
+   the same rules as a server game: a captured king or a side without moves loses and the game is drawn once both
+   sides have made Position.moveLimit moves. Games run in parallel, one per core, each engine searching on its own
+   game clock with a single thread.
+
+   The result is reported from the first configuration's side as an Elo difference with a 95% error bar. With
+   --sprt the match stops as soon as a sequential probability ratio test accepts either Elo bound. Average depth
+   and nodes per second are reported per configuration, which shows whether a speed-up turned into results.
+
+   Usage: java Tournament [options] <config> <config>
+     config            name[:option=value,...] with options nullmove, lmr, futility and see (on or off),
+                       hash (MB) and movetime (per-move limit in ms)
+     --games n         games to play, rounded up to an even number (default 200)
+     --time s          clock per side for each game in seconds (default 10)
+     --concurrency n   games played at the same time (default: available processors)
+     --openings n      random plies played before the engines take over (default 4)
+     --seed n          seed for the openings (default 19410)
+     --sprt e0,e1      stop early once Elo e0 or e1 is accepted, alpha = beta = 0.05
+     --log file        append every game to a game log read by GameReplay
+ */
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class Tournament {
+    private static final double sprtAlpha = 0.05;
+    private static final double sprtBeta = 0.05;
+
+    private int games = 200;
+    private long gameTime = 10000000000L;
+    private int concurrency = Runtime.getRuntime().availableProcessors();
+    private int openingPlies = 4;
+    private long seed = 19410;
+    private double[] sprtBounds;  // Elo under the null and the alternative hypothesis, null when not testing
+    private GameLog gameLog;
+    private final Config[] configs = new Config[2];
+
+    // results from the first configuration's side, guarded by the Tournament instance
+    private int wins;
+    private int losses;
+    private int draws;
+    private boolean decided;
+
+    /*
+       One engine setup and the search counters summed over every move it played.
+     */
+    private static class Config {
+        String name;
+        boolean nullMove = true;
+        boolean lateMoveReductions = true;
+        boolean futilityPruning = true;
+        boolean staticExchange = true;
+        int hashMB = 16;
+        long moveTime = 5000000000L;
+
+        long moves;
+        long depthSum;
+        long nodes;
+        long timeUsed;
+
+        MiniChess newEngine(){
+            MiniChess mc = new MiniChess(MiniChess.defaultBoard, hashMB, 1);
+            mc.setUseNullMove(nullMove);
+            mc.setUseLateMoveReductions(lateMoveReductions);
+            mc.setUseFutilityPruning(futilityPruning);
+            mc.setUseStaticExchange(staticExchange);
+            mc.setPonder(false);
+            mc.setLogSearches(false);
+            return mc;
+        }
+
+        synchronized void record(SearchStats stats){
+            moves++;
+            depthSum += stats.depth;
+            nodes += stats.nodes;
+            timeUsed += stats.timeUsed;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        Tournament tournament = new Tournament();
+        if(!tournament.parseArguments(args)) {
+            System.out.println("usage: java Tournament [--games n] [--time s] [--concurrency n] [--openings n] [--seed n]"
+                    + " [--sprt e0,e1] [--log file] name[:option=value,...] name[:option=value,...]");
+            return;
+        }
+        tournament.run();
+        if(tournament.gameLog != null)
+            tournament.gameLog.close();
+    }
+
+    private boolean parseArguments(String[] args) throws IOException {
+        int configCount = 0;
+        try {
+            for(int i = 0; i < args.length; ++i){
+                switch (args[i]){
+                    case "--games": games = Integer.parseInt(args[++i]); break;
+                    case "--time": gameTime = (long) (Double.parseDouble(args[++i]) * 1e9); break;
+                    case "--concurrency": concurrency = Integer.parseInt(args[++i]); break;
+                    case "--openings": openingPlies = Integer.parseInt(args[++i]); break;
+                    case "--seed": seed = Long.parseLong(args[++i]); break;
+                    case "--sprt":
+                        String[] bounds = args[++i].split(",");
+                        sprtBounds = new double[]{Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1])};
+                        break;
+                    case "--log": gameLog = GameLog.open(Paths.get(args[++i])); break;
+                    default:
+                        if(configCount == configs.length)
+                            return false;
+                        configs[configCount++] = parseConfig(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e){
+            return false;
+        }
+        return configCount == configs.length && games > 0 && concurrency > 0;
+    }
+
+    private static Config parseConfig(String spec){
+        Config config = new Config();
+        int colon = spec.indexOf(':');
+        config.name = (colon < 0 ? spec : spec.substring(0, colon));
+        if(colon < 0 || colon == spec.length() - 1)
+            return config;
+        for(String option : spec.substring(colon + 1).split(",")){
+            String[] pair = option.split("=");
+            if(pair.length != 2)
+                throw new IllegalArgumentException("bad option " + option);
+            switch (pair[0]){
+                case "nullmove": config.nullMove = parseSwitch(pair[1]); break;
+                case "lmr": config.lateMoveReductions = parseSwitch(pair[1]); break;
+                case "futility": config.futilityPruning = parseSwitch(pair[1]); break;
+                case "see": config.staticExchange = parseSwitch(pair[1]); break;
+                case "hash": config.hashMB = Integer.parseInt(pair[1]); break;
+                case "movetime": config.moveTime = Long.parseLong(pair[1]) * 1000000L; break;
+                default: throw new IllegalArgumentException("unknown option " + pair[0]);
+            }
+        }
+        return config;
+    }
+
+    private static boolean parseSwitch(String value){
+        if(!value.equals("on") && !value.equals("off"))
+            throw new IllegalArgumentException("expected on or off: " + value);
+        return value.equals("on");
+    }
+
+    private void run() throws InterruptedException {
+        List<String> openings = randomOpenings((games + 1) / 2);
+        System.out.println("tournament " + configs[0].name + " vs " + configs[1].name + " games=" + openings.size() * 2
+                + " time_s=" + gameTime / 1e9 + " concurrency=" + concurrency + " openings=" + openingPlies);
+
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        ThreadLocal<MiniChess[]> engines = ThreadLocal.withInitial(
+                () -> new MiniChess[]{configs[0].newEngine(), configs[1].newEngine()});
+        List<Future<?>> results = new ArrayList<>();
+        for(int i = 0; i < openings.size() * 2; ++i){
+            int game = i;
+            String opening = openings.get(i / 2);
+            results.add(pool.submit(() -> {
+                synchronized (this) {
+                    if(decided)
+                        return;
+                }
+                MiniChess[] pair = engines.get();
+                boolean firstIsWhite = (game % 2 == 0);
+                MiniChess white = (firstIsWhite ? pair[0] : pair[1]);
+                MiniChess black = (firstIsWhite ? pair[1] : pair[0]);
+                Config whiteConfig = (firstIsWhite ? configs[0] : configs[1]);
+                Config blackConfig = (firstIsWhite ? configs[1] : configs[0]);
+                GameLog.Game record = new GameLog.Game(new Position(opening), '-');
+                int result = playGame(opening, white, whiteConfig, black, blackConfig, record);  // 1, 0 or -1 for white
+                recordResult(game, firstIsWhite ? result : -result, result);
+                logGame(record, result);
+            }));
+        }
+        pool.shutdown();
+        int failed = 0;
+        for(int i = 0; i < results.size(); ++i){
+            try {
+                results.get(i).get();
+            } catch (ExecutionException e){
+                ++failed;
+                System.out.println("tournament game " + (i + 1) + " failed: " + e.getCause());
+            }
+        }
+        if(failed > 0)
+            System.out.println("tournament failed_games=" + failed + ", the results below leave them out");
+        printSummary();
+    }
+
+    /*
+       Plays one game, adding its moves to the record, and returns 1 if white won, -1 if black won and 0 for a draw.
+     */
+    private int playGame(String opening, MiniChess white, Config whiteConfig, MiniChess black, Config blackConfig,
+                         GameLog.Game record){
+        white.setPosition(opening);
+        black.setPosition(opening);
+        white.startGame(gameTime, Math.min(whiteConfig.moveTime, gameTime));
+        black.startGame(gameTime, Math.min(blackConfig.moveTime, gameTime));
+        boolean whiteToMove = opening.split("\\s+")[1].equals("W");
+        while(true){
+            MiniChess mover = (whiteToMove ? white : black);
+            if(whiteToMove && mover.getMoveNum() >= Position.moveLimit)
+                return 0;
+            if(mover.legalMoves().length == 0)  // no moves loses
+                return (whiteToMove ? -1 : 1);
+            int move = mover.chooseMove();
+            (whiteToMove ? whiteConfig : blackConfig).record(mover.getStats());
+            int played = white.playGameMove(move);
+            black.playGameMove(move);
+            record.addMove(played, mover.getRootScore(), mover.getStats().depth, mover.getStats().timeUsed);
+            if(Character.toLowerCase(Position.moveCaptured(played)) == 'k')
+                return (whiteToMove ? 1 : -1);
+            whiteToMove = !whiteToMove;
+        }
+    }
+
+    private void logGame(GameLog.Game record, int result){
+        if(gameLog == null)
+            return;
+        record.result = (byte) result;
+        try {
+            gameLog.append(record);
+        } catch (IOException e){
+            System.out.println("game log: " + e.getMessage());
+        }
+    }
+
+    private synchronized void recordResult(int game, int firstResult, int whiteResult){
+        if(decided)
+            return;
+        if(firstResult > 0)
+            wins++;
+        else if(firstResult < 0)
+            losses++;
+        else
+            draws++;
+        String status = "";
+        if(sprtBounds != null) {
+            double llr = logLikelihoodRatio();
+            if(llr >= Math.log((1 - sprtBeta) / sprtAlpha) || llr <= Math.log(sprtBeta / (1 - sprtAlpha)))
+                decided = true;
+            status = String.format(" llr=%.2f", llr);
+        }
+        System.out.println("game " + (game + 1) + " white=" + configs[game % 2 == 0 ? 0 : 1].name
+                + " result=" + (whiteResult > 0 ? "1-0" : whiteResult < 0 ? "0-1" : "1/2-1/2")
+                + " score=" + wins + "-" + losses + "-" + draws + status);
+    }
+
+    private synchronized void printSummary(){
+        int played = wins + losses + draws;
+        double score = (wins + 0.5 * draws) / Math.max(1, played);
+        double margin = 1.96 * scoreDeviation() / Math.sqrt(Math.max(1, played));
+        double elo = elo(score);
+        System.out.printf("result %s vs %s games=%d wins=%d losses=%d draws=%d score=%.1f%% elo=%.1f +/- %.1f%n",
+                configs[0].name, configs[1].name, played, wins, losses, draws, 100 * score, elo,
+                (elo(score + margin) - elo(score - margin)) / 2);
+        if(sprtBounds != null) {
+            double llr = logLikelihoodRatio();
+            double upper = Math.log((1 - sprtBeta) / sprtAlpha);
+            double lower = Math.log(sprtBeta / (1 - sprtAlpha));
+            System.out.printf("sprt elo0=%.1f elo1=%.1f llr=%.2f bounds=[%.2f, %.2f] %s%n", sprtBounds[0],
+                    sprtBounds[1], llr, lower, upper, llr >= upper ? "H1 accepted" : llr <= lower ? "H0 accepted"
+                            : "inconclusive");
+        }
+        for(Config config : configs){
+            System.out.printf("config %s moves=%d avg_depth=%.2f nps=%d%n", config.name, config.moves,
+                    (double) config.depthSum / Math.max(1, config.moves),
+                    config.nodes * 1000000000L / Math.max(1, config.timeUsed));
+        }
+    }
+
+    /*
+       Standard deviation of a single game's score, from the observed win, draw and loss frequencies.
+     */
+    private double scoreDeviation(){
+        int played = Math.max(1, wins + losses + draws);
+        double score = (wins + 0.5 * draws) / played;
+        double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2)
+                + losses * Math.pow(score, 2)) / played;
+        return Math.sqrt(variance);
+    }
+
+    /*
+       Log-likelihood ratio of the two Elo hypotheses under the normal approximation to the game scores, the
+       quantity the SPRT compares against its bounds.
+     */
+    private double logLikelihoodRatio(){
+        int played = wins + losses + draws;
+        double variance = Math.pow(scoreDeviation(), 2);
+        if(played == 0 || variance == 0)
+            return 0;
+        double s0 = expectedScore(sprtBounds[0]);
+        double s1 = expectedScore(sprtBounds[1]);
+        double total = wins + 0.5 * draws;
+        return (s1 - s0) * (2 * total - played * (s0 + s1)) / (2 * variance);
+    }
+
+    private static double expectedScore(double elo){
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    private static double elo(double score){
+        score = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /*
+       Random openings reached by playing random legal moves from the starting position. Openings that end the
+       game or repeat an earlier one are drawn again.
+     */
+    private List<String> randomOpenings(int count){
+        Random random = new Random(seed);
+        HashSet<Long> seen = new HashSet<>();
+        List<String> openings = new ArrayList<>();
+        for(int attempts = 0; openings.size() < count && attempts < count * 100; ++attempts){
+            Position walker = new Position(MiniChess.defaultBoard);
+            boolean playable = true;
+            for(int ply = 0; ply < openingPlies && playable; ++ply){
+                int[] moves = walker.legalMoves();
+                if(moves.length == 0) {
+                    playable = false;
+                    break;
+                }
+                int played = walker.makeMove(moves[random.nextInt(moves.length)]);
+                playable = Character.toLowerCase(Position.moveCaptured(played)) != 'k';
+            }
+            if(playable && walker.legalMoves().length > 0 && seen.add(walker.hashKey()))
+                openings.add(walker.toText());
+        }
+        return openings;
+    }
+}
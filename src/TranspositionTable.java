@@ -0,0 +1,110 @@
+/*
+   Fixed-size transposition table for the negamax search. The table is a power-of-two array of two-entry buckets,
+   the first entry of each bucket is depth-preferred and the second is always replaced. Every entry is a pair of
+   longs, the Zobrist key and a packed data word holding score, best move, depth, bound type and search age.
+
+   The table is shared by all search threads without locking. Each slot stores the key xor'd with its data word,
+   so an entry torn by two threads writing at once no longer matches its key and is simply treated as a miss.
+ */
+public class TranspositionTable {
+    public static final int boundNone = 0;
+    public static final int boundExact = 1;
+    public static final int boundLower = 2;  // score is at least the stored value (failed high)
+    public static final int boundUpper = 3;  // score is at most the stored value (failed low)
+
+    private static final int entryBytes = 16;
+    private static final int moveShift = 32;
+    private static final long moveMask = 0x3FFFFL;
+    private static final int depthShift = 50;
+    private static final long depthMask = 0x7FL;
+    private static final int boundShift = 57;
+    private static final long boundMask = 0x3L;
+    private static final int ageShift = 59;
+    private static final long ageMask = 0x1FL;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int bucketMask;
+    private int age = 0;
+
+    TranspositionTable(int sizeMB) {
+        long entries = Math.max(2, ((long) sizeMB << 20) / entryBytes);
+        int buckets = Integer.highestOneBit((int) Math.min(entries / 2, 1 << 30));  // round down to a power of two
+        keys = new long[buckets * 2];
+        data = new long[buckets * 2];
+        bucketMask = buckets - 1;
+    }
+
+    /*
+       Called at the start of every root search so that entries left over from earlier moves of the game can be
+       told apart and replaced in the depth-preferred slot even when they are deeper.
+     */
+    public void newSearch(){
+        age = (age + 1) & (int) ageMask;
+    }
+
+    public void clear(){
+        java.util.Arrays.fill(keys, 0L);
+        java.util.Arrays.fill(data, 0L);
+        age = 0;
+    }
+
+    /*
+       Looks up the given key and returns the packed data word of the matching entry, or 0 if there is none. A
+       zero word always decodes to boundNone so callers only need to check the bound.
+     */
+    public long probe(long key){
+        int index = ((int) key & bucketMask) << 1;
+        long entry = data[index];
+        if((keys[index] ^ entry) == key && entry != 0)
+            return entry;
+        entry = data[index + 1];
+        if((keys[index + 1] ^ entry) == key && entry != 0)
+            return entry;
+        return 0L;
+    }
+
+    public void store(long key, int depth, int bound, int score, int move){
+        int index = ((int) key & bucketMask) << 1;
+        long entry = (score & 0xFFFFFFFFL)
+                | ((move & moveMask) << moveShift)
+                | ((Math.min(depth, (int) depthMask) & depthMask) << depthShift)
+                | ((bound & boundMask) << boundShift)
+                | ((age & ageMask) << ageShift);
+
+        long old = data[index];
+        long oldKey = keys[index] ^ old;
+        if(oldKey == key || old == 0 || entryAge(old) != age || depth >= entryDepth(old)) {
+            if(oldKey != key && old != 0 && entryAge(old) == age) {  // demote the old deep entry to the second slot
+                keys[index + 1] = oldKey ^ old;
+                data[index + 1] = old;
+            }
+            keys[index] = key ^ entry;
+            data[index] = entry;
+        }
+        else {
+            keys[index + 1] = key ^ entry;
+            data[index + 1] = entry;
+        }
+    }
+
+    public static int entryScore(long entry){
+        return (int) entry;
+    }
+
+    public static int entryMove(long entry){
+        return (int) ((entry >>> moveShift) & moveMask);
+    }
+
+    public static int entryDepth(long entry){
+        return (int) ((entry >>> depthShift) & depthMask);
+    }
+
+    public static int entryBound(long entry){
+        return (int) ((entry >>> boundShift) & boundMask);
+    }
+
+    private static int entryAge(long entry){
+        return (int) ((entry >>> ageShift) & ageMask);
+    }
+}
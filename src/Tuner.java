@@ -0,0 +1,289 @@
+/*
+   Fits the piece values and piece-square tables to game results (Texel's tuning method). "extract" replays game
+   logs written by GameLog and keeps the quiet positions of every finished game, each with the game's result, in a
+   training file of fixed-size records. "tune" maps a score to an expected result with a logistic curve and
+   minimises the mean squared difference to the real results over every training position, first fitting the
+   curve's scale to the starting weights and then moving the weights by Adam gradient descent. Every pass over the
+   training file is a fork-join task split into chunks that are read from disk one at a time, so memory does not
+   grow with the number of positions. The weights are written in the format EvaluationWeights reads, which Main
+   loads from minichess.weights at startup.
+
+   Usage: java Tuner extract <training file> <game log>... [--skip plies]
+          java Tuner tune <training file> <weights file> [--iterations n] [--threads n] [--start weights file]
+ */
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class Tuner {
+    private static final int recordBytes = Position.squares + 1;  // board letters, then the result for white
+    private static final int chunkPositions = 1 << 16;  // positions read from disk at a time by one task
+    private static final int types = EvaluationWeights.pieceTypes.length();
+    private static final int parameters = types + types * Position.squares;  // piece values, then the tables
+    private static final int kingValue = EvaluationWeights.pieceTypes.indexOf('k');  // both kings are always there
+    private static final int defaultSkipPlies = 4;  // first plies of each record left out, they repeat across games
+    private static final int defaultIterations = 300;
+    private static final double learningRate = 1.0;  // centipawns per step at full gradient
+    private static final double beta1 = 0.9;
+    private static final double beta2 = 0.999;
+    private static final double epsilon = 1e-8;
+
+    private final FileChannel data;
+    private final long positions;
+    private final int chunks;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<ByteBuffer> chunkBuffers =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(chunkPositions * recordBytes));
+
+    Tuner(Path trainingFile, int threads) throws IOException {
+        data = FileChannel.open(trainingFile, StandardOpenOption.READ);
+        positions = data.size() / recordBytes;
+        chunks = (int) ((positions + chunkPositions - 1) / chunkPositions);
+        pool = new ForkJoinPool(threads);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length >= 3 && args[0].equals("extract")) {
+            int skipPlies = defaultSkipPlies;
+            List<Path> logs = new ArrayList<>();
+            for(int i = 2; i < args.length; ++i){
+                if(args[i].equals("--skip") && i + 1 < args.length)
+                    skipPlies = Integer.parseInt(args[++i]);
+                else
+                    logs.add(Paths.get(args[i]));
+            }
+            extract(Paths.get(args[1]), logs, skipPlies);
+        }
+        else if(args.length >= 3 && args[0].equals("tune")) {
+            int iterations = defaultIterations;
+            int threads = Runtime.getRuntime().availableProcessors();
+            EvaluationWeights start = Position.weights();
+            for(int i = 3; i + 1 < args.length; i += 2){
+                switch (args[i]){
+                    case "--iterations": iterations = Integer.parseInt(args[i + 1]); break;
+                    case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                    case "--start": start = EvaluationWeights.read(Paths.get(args[i + 1])); break;
+                    default: System.out.println("unknown option " + args[i]); return;
+                }
+            }
+            Tuner tuner = new Tuner(Paths.get(args[1]), Math.max(1, threads));
+            if(tuner.positions == 0) {
+                System.out.println("no positions in " + args[1]);
+                return;
+            }
+            tuner.tune(start, iterations).write(Paths.get(args[2]),
+                    "fitted by Tuner to " + tuner.positions + " positions from " + args[1]);
+            System.out.println("tune weights=" + args[2]);
+        }
+        else
+            System.out.println("usage: java Tuner extract <training file> <game log>... [--skip plies]\n"
+                    + "       java Tuner tune <training file> <weights file> [--iterations n] [--threads n]"
+                    + " [--start weights file]");
+    }
+
+    /*
+       Replays every finished game in the logs and writes its quiet positions, those not reached by a capture or
+       promotion, with the game's result: 0 black won, 1 draw, 2 white won.
+     */
+    static void extract(Path trainingFile, List<Path> logs, int skipPlies) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(chunkPositions * recordBytes);
+        long games = 0;
+        long written = 0;
+        try (FileChannel out = FileChannel.open(trainingFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for(Path log : logs){
+                try (GameLog.Reader reader = new GameLog.Reader(log)) {
+                    for(long n = 0; n < reader.gameCount(); ++n){
+                        GameLog.Game game = reader.read(n);
+                        if(game.result == GameLog.unfinished)
+                            continue;
+                        ++games;
+                        Position position = game.startPosition();
+                        for(int i = 0; i < game.moveCount; ++i){
+                            int move = position.makeMove(game.moves[i]);
+                            if(!position.kingsAlive())
+                                break;
+                            if(i + 1 < skipPlies || !Position.isQuiet(move))
+                                continue;
+                            if(!buffer.hasRemaining())
+                                flush(out, buffer);
+                            for(int sq = 0; sq < Position.squares; ++sq)
+                                buffer.put((byte) position.pieceAt(sq));
+                            buffer.put((byte) (game.result + 1));
+                            ++written;
+                        }
+                    }
+                }
+            }
+            flush(out, buffer);
+        }
+        System.out.println("extract games=" + games + " positions=" + written + " file=" + trainingFile);
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining())
+            out.write(buffer);
+        buffer.clear();
+    }
+
+    /*
+       Fits the logistic scale to the starting weights, then runs the given number of Adam steps on the weights.
+       The king's value is left alone since both kings are on every training board.
+     */
+    EvaluationWeights tune(EvaluationWeights start, int iterations){
+        double[] weights = new double[parameters];
+        for(int type = 0; type < types; ++type){
+            weights[type] = start.pieceValues[type];
+            for(int sq = 0; sq < Position.squares; ++sq)
+                weights[types + type * Position.squares + sq] = start.tables[type][sq];
+        }
+        double scale = fitScale(weights);
+        double startError = error(weights, scale);
+        System.out.printf("tune positions=%d chunks=%d scale=%.4f mse=%.6f%n", positions, chunks, scale, startError);
+
+        double[] m = new double[parameters];
+        double[] v = new double[parameters];
+        for(int step = 1; step <= iterations; ++step){
+            double[] pass = pool.invoke(new Pass(weights, scale, true, 0, chunks));
+            for(int i = 0; i < parameters; ++i){
+                if(i == kingValue)
+                    continue;
+                double gradient = pass[i] / positions;
+                m[i] = beta1 * m[i] + (1 - beta1) * gradient;
+                v[i] = beta2 * v[i] + (1 - beta2) * gradient * gradient;
+                double mHat = m[i] / (1 - Math.pow(beta1, step));
+                double vHat = v[i] / (1 - Math.pow(beta2, step));
+                weights[i] -= learningRate * mHat / (Math.sqrt(vHat) + epsilon);
+            }
+            if(step % 10 == 0 || step == iterations)
+                System.out.printf("tune step=%d mse=%.6f%n", step, pass[parameters] / positions);
+        }
+        System.out.printf("tune mse_start=%.6f mse_end=%.6f%n", startError, error(weights, scale));
+
+        EvaluationWeights result = new EvaluationWeights();
+        for(int type = 0; type < types; ++type){
+            result.pieceValues[type] = (int) Math.round(weights[type]);
+            for(int sq = 0; sq < Position.squares; ++sq)
+                result.tables[type][sq] = (int) Math.round(weights[types + type * Position.squares + sq]);
+        }
+        return result;
+    }
+
+    private double error(double[] weights, double scale){
+        return pool.invoke(new Pass(weights, scale, false, 0, chunks))[parameters] / positions;
+    }
+
+    /*
+       Golden section search for the logistic scale that fits the starting weights best.
+     */
+    private double fitScale(double[] weights){
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double low = 0.05;
+        double high = 5;
+        for(int i = 0; i < 25; ++i){
+            double a = high - ratio * (high - low);
+            double b = low + ratio * (high - low);
+            if(error(weights, a) < error(weights, b))
+                high = b;
+            else
+                low = a;
+        }
+        return (low + high) / 2;
+    }
+
+    /*
+       One pass over a range of chunks. Returns the gradient of the summed squared error for every weight, when
+       asked for, followed by the summed squared error itself.
+     */
+    private class Pass extends RecursiveTask<double[]> {
+        private static final long serialVersionUID = 1L;
+        final double[] weights;
+        final double scale;
+        final boolean gradient;
+        final int firstChunk;
+        final int lastChunk;
+
+        Pass(double[] weights, double scale, boolean gradient, int firstChunk, int lastChunk) {
+            this.weights = weights;
+            this.scale = scale;
+            this.gradient = gradient;
+            this.firstChunk = firstChunk;
+            this.lastChunk = lastChunk;
+        }
+
+        @Override
+        protected double[] compute(){
+            if(lastChunk - firstChunk <= 1)
+                return chunk(firstChunk);
+            int middle = (firstChunk + lastChunk) >>> 1;
+            Pass left = new Pass(weights, scale, gradient, firstChunk, middle);
+            left.fork();
+            double[] sum = new Pass(weights, scale, gradient, middle, lastChunk).compute();
+            double[] other = left.join();
+            for(int i = 0; i < sum.length; ++i)
+                sum[i] += other[i];
+            return sum;
+        }
+
+        private double[] chunk(int chunk){
+            double[] sum = new double[parameters + 1];
+            ByteBuffer buffer = chunkBuffers.get();
+            buffer.clear();
+            long first = (long) chunk * chunkPositions;
+            int count = (int) Math.min(chunkPositions, positions - first);
+            buffer.limit(count * recordBytes);
+            try {
+                long offset = first * recordBytes;
+                while(buffer.hasRemaining()){
+                    int read = data.read(buffer, offset);
+                    if(read < 0)
+                        throw new EOFException("training file changed while tuning");
+                    offset += read;
+                }
+            } catch (IOException e){
+                throw new UncheckedIOException(e);
+            }
+
+            byte[] records = buffer.array();
+            int[] features = new int[Position.squares];  // table index of each piece, negative for black
+            for(int p = 0; p < count; ++p){
+                int base = p * recordBytes;
+                double score = 0;
+                int pieces = 0;
+                for(int sq = 0; sq < Position.squares; ++sq){
+                    char pc = (char) records[base + sq];
+                    if(pc == Position.empty)
+                        continue;
+                    boolean white = Character.isUpperCase(pc);
+                    int type = EvaluationWeights.pieceTypes.indexOf(Character.toLowerCase(pc));
+                    int tableSquare = (white ? sq
+                            : (Position.rows - 1 - sq / Position.cols) * Position.cols + sq % Position.cols);
+                    int table = types + type * Position.squares + tableSquare;
+                    double value = weights[type] + weights[table];
+                    score += (white ? value : -value);
+                    features[pieces++] = (white ? table : -table);
+                }
+                double result = records[base + Position.squares] / 2.0;
+                double expected = 1 / (1 + Math.pow(10, -scale * score / 400));
+                double difference = result - expected;
+                sum[parameters] += difference * difference;
+                if(gradient) {  // d/dw of the squared difference, through the logistic curve
+                    double slope = -2 * difference * expected * (1 - expected) * scale * Math.log(10) / 400;
+                    for(int i = 0; i < pieces; ++i){
+                        int table = Math.abs(features[i]);
+                        int type = (table - types) / Position.squares;
+                        double signed = (features[i] > 0 ? slope : -slope);
+                        sum[type] += signed;
+                        sum[table] += signed;
+                    }
+                }
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+   Gets the JIT to compile the search before the first real move. A fresh JVM runs the first searches in the
+   interpreter and the quick first-tier compiler, so without a warm-up the opening moves of every game reach a
+   much lower depth in the same time than later ones. The warm-up searches a few representative positions to a
+   fixed depth with a private table, round after round with the same work, until rounds stop getting faster or
+   the time budget runs out, and reports how long that took. Combined with the class data archive from "make cds"
+   the JVM also skips most class loading and verification at startup. With --train the warm-up is followed by a
+   short game through Main's setup and the IMCS client against a scripted server on the loopback interface, so an
+   archive dumped at exit also holds the client, the game log, the book and tablebases if present, and the NIO
+   classes they use.
+
+   Usage: java Warmup [--train] [budget ms]
+ */
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+public class Warmup {
+    static final String[] positions = new String[]{
+            MiniChess.defaultBoard,
+            "10 W\n" +
+            "k.b.r\n" +
+            "pp.q.\n" +
+            "..pn.\n" +
+            ".P.p.\n" +
+            "P.PNP\n" +
+            "R.BQK\n",
+            "30 B\n" +
+            "..k..\n" +
+            ".p...\n" +
+            ".....\n" +
+            "..P..\n" +
+            ".K..r\n" +
+            ".....\n"
+    };
+    static final long defaultBudget = 2000000000L;
+    private static final int warmupDepth = 7;
+    private static final int tableSizeMB = 16;
+    private static final int minRounds = 3;
+    private static final int steadyRounds = 2;  // rounds in a row within the tolerance of the fastest one
+    private static final double steadyTolerance = 1.05;
+    private static final int trainingPlies = 16;
+    private static final String trainingClock = "0:02";  // what the scripted server reports for both clocks
+    private static final long trainingGameTime = 2000000000L;
+
+    public static void main(String[] args) throws IOException {
+        boolean train = (args.length > 0 && args[0].equals("--train"));
+        int budgetArg = (train ? 1 : 0);
+        run(args.length > budgetArg ? Long.parseLong(args[budgetArg]) * 1000000L : defaultBudget);
+        if(train)
+            train();
+        System.out.println("warmup jvm_uptime_ms=" + ManagementFactory.getRuntimeMXBean().getUptime());
+    }
+
+    /*
+       Runs warm-up rounds for at most the given number of nanoseconds and returns the time until the search ran
+       at full speed, or the whole time spent if it never settled.
+     */
+    static long run(long budget){
+        long startTime = System.nanoTime();
+        TranspositionTable table = new TranspositionTable(tableSizeMB);
+        Search[] searches = new Search[positions.length];
+        for(int i = 0; i < positions.length; ++i){
+            searches[i] = new Search(new Position(positions[i]), table);
+            searches[i].setRandomizeRoot(false);  // the same nodes every round, so round times compare
+        }
+        long firstRound = 0;
+        long fastestRound = Long.MAX_VALUE;
+        long lastRound = 0;
+        long nodes = 0;
+        int rounds = 0;
+        int steady = 0;
+        while(steady < steadyRounds && System.nanoTime() - startTime < budget){
+            long roundStart = System.nanoTime();
+            nodes = 0;
+            for(Search search : searches){
+                table.clear();
+                search.clearHistory();
+                nodes += search.searchToDepth(warmupDepth);
+            }
+            lastRound = System.nanoTime() - roundStart;
+            if(rounds++ == 0)
+                firstRound = lastRound;
+            steady = (rounds > minRounds && lastRound <= fastestRound * steadyTolerance ? steady + 1 : 0);
+            fastestRound = Math.min(fastestRound, lastRound);
+        }
+        long elapsed = System.nanoTime() - startTime;
+        System.out.println("warmup rounds=" + rounds + " steady=" + (steady >= steadyRounds) + " time_ms="
+                + elapsed / 1000000 + " nodes_per_round=" + nodes + " first_round_ms=" + firstRound / 1000000
+                + " last_round_ms=" + lastRound / 1000000 + " nps=" + nodes * 1000000000L / Math.max(1, lastRound));
+        return elapsed;
+    }
+
+    /*
+       Plays a short game as white through the same engine setup and client as Main, logging it to a scratch log
+       that is deleted afterwards.
+     */
+    private static void train() throws IOException {
+        Path log = Files.createTempFile("warmup", ".mgl");
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             GameLog gameLog = GameLog.open(log)) {
+            Thread stub = new Thread(() -> serveScriptedGame(server));
+            stub.setDaemon(true);
+            stub.start();
+            MiniChess mc = Main.setUp(gameLog);
+            mc.startGame(trainingGameTime, trainingGameTime / Position.moveLimit);
+            mc.playOnServer(server.getInetAddress().getHostAddress(), Integer.toString(server.getLocalPort()),
+                    "warmup", "warmup", 1, "", 'W');
+        } finally {
+            Files.deleteIfExists(log);
+            Files.deleteIfExists(GameLog.indexFile(log));
+        }
+    }
+
+    /*
+       Speaks just enough of the IMCS protocol for one offered game: log in, start the engine as white, then
+       answer each of its moves with the first legal reply until the scripted plies are played, and call a draw.
+     */
+    private static void serveScriptedGame(ServerSocket server){
+        try (Socket socket = server.accept();
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                     StandardCharsets.ISO_8859_1));
+             Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1)) {
+            sendLine(out, "100 imcs 2.5");
+            in.readLine();  // me <user> <password>
+            sendLine(out, "201 hello warmup");
+            in.readLine();  // offer W
+            sendLine(out, "103 game waiting for offer");
+            sendLine(out, "105 game starts");
+            Position position = new Position(MiniChess.defaultBoard);
+            for(int ply = 0; ply < trainingPlies; ply += 2){
+                sendLine(out, "? W " + trainingClock + " B " + trainingClock);
+                String move = in.readLine();
+                if(move == null)
+                    return;
+                position.makeMove(Position.decodeMove(move.trim()));
+                int[] replies = position.legalMoves();
+                if(!position.kingsAlive() || replies.length == 0)
+                    break;
+                position.makeMove(replies[0]);
+                sendLine(out, "! " + Position.encodeMove(replies[0]));
+                if(!position.kingsAlive())
+                    break;
+            }
+            sendLine(out, "= W draw");
+        } catch (IOException e){
+            System.out.println("warmup server: " + e.getMessage());
+        }
+    }
+
+    private static void sendLine(Writer out, String line) throws IOException {
+        out.write(line + "\r\n");
+        out.flush();
+    }
+}